@@ -0,0 +1,291 @@
+package io.github.dousxcoder.tools.cache;
+
+import cn.hutool.log.Log;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * {@link MemoryCache}的异步接口
+ * <br>
+ * <ul>
+ *     <li>命中时直接返回已完成的{@link CompletableFuture}，未命中时在线程池中加载，调用线程不阻塞</li>
+ *     <li>同一个key正在加载时复用同一个{@link CompletableFuture}</li>
+ *     <li>使用{@link MemoryCacheBulkLoader}时，一次{@link AsyncMemoryCache#getAllAsync(Collection)}的所有未命中key合并为一次加载</li>
+ *     <li>加载结果为null时不缓存，future以null完成；加载异常时future异常完成</li>
+ * </ul>
+ *
+ * @author dousx
+ */
+public class AsyncMemoryCache<K, V> implements AutoCloseable {
+    private static final Log log = Log.get(AsyncMemoryCache.class);
+
+    private final MemoryCache<K, V> cache;
+    private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final MemoryCacheLoader<K, V> loader;
+    private final MemoryCacheBulkLoader<K, V> bulkLoader;
+    private final Executor executor;
+
+    private AsyncMemoryCache(Builder<K, V> builder, MemoryCacheLoader<K, V> loader, MemoryCacheBulkLoader<K, V> bulkLoader) {
+        this.cache = builder.cache == null ? MemoryCache.<K, V>builder().build() : builder.cache;
+        this.executor = builder.executor;
+        this.loader = loader;
+        this.bulkLoader = bulkLoader;
+    }
+
+    public static <K, V> Builder<K, V> builder() {
+        return new Builder<>();
+    }
+
+    /**
+     * @param key key
+     * @return value的future
+     */
+    public CompletableFuture<V> getAsync(K key) {
+        V value = cache.get(key);
+        if (value != null) {
+            return CompletableFuture.completedFuture(value);
+        }
+        CompletableFuture<V> future = new CompletableFuture<>();
+        CompletableFuture<V> running = inFlight.putIfAbsent(key, future);
+        if (running != null) {
+            return running;
+        }
+        if (completeIfPresent(key, future)) {
+            return future;
+        }
+        if (bulkLoader != null) {
+            dispatchBulk(Collections.singletonMap(key, future));
+        } else {
+            dispatch(key, future);
+        }
+        return future;
+    }
+
+    /**
+     * 批量获取
+     *
+     * @param keys keys
+     * @return 存在的key -> value，不包含加载结果为null的key；任一批次加载异常时异常完成
+     */
+    public CompletableFuture<Map<K, V>> getAllAsync(Collection<? extends K> keys) {
+        Map<K, V> present = new LinkedHashMap<>();
+        Map<K, CompletableFuture<V>> pending = new LinkedHashMap<>();
+        Map<K, CompletableFuture<V>> toLoad = new LinkedHashMap<>();
+        for (K key : new LinkedHashSet<>(keys)) {
+            V value = cache.get(key);
+            if (value != null) {
+                present.put(key, value);
+                continue;
+            }
+            CompletableFuture<V> future = new CompletableFuture<>();
+            CompletableFuture<V> running = inFlight.putIfAbsent(key, future);
+            if (running != null) {
+                pending.put(key, running);
+            } else if (completeIfPresent(key, future)) {
+                present.put(key, future.join());
+            } else {
+                pending.put(key, future);
+                toLoad.put(key, future);
+            }
+        }
+        if (pending.isEmpty()) {
+            return CompletableFuture.completedFuture(present);
+        }
+        if (!toLoad.isEmpty()) {
+            if (bulkLoader != null) {
+                dispatchBulk(toLoad);
+            } else {
+                toLoad.forEach(this::dispatch);
+            }
+        }
+        return CompletableFuture.allOf(pending.values().toArray(new CompletableFuture<?>[0])).thenApply(v -> {
+            Map<K, V> result = new LinkedHashMap<>(present);
+            pending.forEach((key, future) -> {
+                V value = future.join();
+                if (value != null) {
+                    result.put(key, value);
+                }
+            });
+            return result;
+        });
+    }
+
+    /**
+     * 写入值，该key正在进行的加载结果不再写入缓存
+     *
+     * @param key   key
+     * @param value value
+     */
+    public void put(K key, V value) {
+        inFlight.remove(key);
+        cache.put(key, value);
+    }
+
+    /**
+     * 删除值，该key正在进行的加载结果不再写入缓存
+     *
+     * @param key key
+     */
+    public void invalidate(K key) {
+        inFlight.remove(key);
+        cache.invalidate(key);
+    }
+
+    public void invalidateAll() {
+        inFlight.clear();
+        cache.invalidateAll();
+    }
+
+    /**
+     * @return 同步接口
+     */
+    public MemoryCache<K, V> synchronous() {
+        return cache;
+    }
+
+    @Override
+    public void close() {
+        cache.close();
+    }
+
+    private void dispatch(K key, CompletableFuture<V> future) {
+        try {
+            executor.execute(() -> {
+                try {
+                    complete(key, future, loader.load(key));
+                } catch (Throwable e) {
+                    fail(Collections.singletonMap(key, future), e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            fail(Collections.singletonMap(key, future), e);
+        }
+    }
+
+    private void dispatchBulk(Map<K, CompletableFuture<V>> batch) {
+        try {
+            executor.execute(() -> {
+                try {
+                    Map<K, V> loaded = bulkLoader.loadAll(Collections.unmodifiableSet(new LinkedHashSet<>(batch.keySet())));
+                    batch.forEach((key, future) -> complete(key, future, loaded == null ? null : loaded.get(key)));
+                } catch (Throwable e) {
+                    fail(batch, e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            fail(batch, e);
+        }
+    }
+
+    /**
+     * 取得加载位置后再查一次缓存：未命中到putIfAbsent之间，上一次加载可能已经写入缓存并移除了future
+     *
+     * @return 缓存中已有值时以该值完成future并返回true
+     */
+    private boolean completeIfPresent(K key, CompletableFuture<V> future) {
+        V value = cache.getIfPresent(key);
+        if (value == null) {
+            return false;
+        }
+        inFlight.remove(key, future);
+        future.complete(value);
+        return true;
+    }
+
+    /**
+     * 先写入缓存再移除加载中的future，避免两者之间出现重复加载
+     * <br>
+     * future已被{@link AsyncMemoryCache#put}或{@link AsyncMemoryCache#invalidate}移除时不写入，避免较旧的加载结果覆盖新值
+     */
+    private void complete(K key, CompletableFuture<V> future, V value) {
+        if (value != null && inFlight.get(key) == future) {
+            cache.put(key, value);
+            if (inFlight.get(key) != future) {
+                // 检查与写入之间被移除：删除刚写入的值(已被新值覆盖时不删除)
+                cache.remove(key, value);
+            }
+        }
+        inFlight.remove(key, future);
+        future.complete(value);
+    }
+
+    private void fail(Map<K, CompletableFuture<V>> batch, Throwable e) {
+        log.warn("加载key:{} 异常", batch.keySet(), e);
+        List<CompletableFuture<V>> futures = new ArrayList<>(batch.size());
+        batch.forEach((key, future) -> {
+            inFlight.remove(key, future);
+            futures.add(future);
+        });
+        futures.forEach(future -> future.completeExceptionally(e));
+    }
+
+    public static final class Builder<K, V> {
+        private MemoryCache<K, V> cache;
+        private Executor executor = CacheExecutors.loader();
+
+        private Builder() {
+        }
+
+        /**
+         * 底层缓存，默认{@link MemoryCache#builder()}的默认配置
+         * <br>
+         * 底层缓存不应再设置{@link MemoryCacheLoader}，否则未命中时会同步加载
+         *
+         * @param cache 缓存
+         * @return this
+         */
+        public Builder<K, V> cache(MemoryCache<K, V> cache) {
+            this.cache = cache;
+            return this;
+        }
+
+        /**
+         * 加载线程池，默认{@link CacheExecutors#loader()}
+         *
+         * @param executor 线程池
+         * @return this
+         * @see CacheExecutors#virtualThreads()
+         */
+        public Builder<K, V> executor(Executor executor) {
+            this.executor = executor;
+            return this;
+        }
+
+        /**
+         * 逐个key加载
+         *
+         * @param loader 数据加载
+         * @return {@link AsyncMemoryCache}
+         */
+        public AsyncMemoryCache<K, V> build(MemoryCacheLoader<K, V> loader) {
+            if (loader == null) {
+                throw new NullPointerException("loader");
+            }
+            return new AsyncMemoryCache<>(this, loader, null);
+        }
+
+        /**
+         * 未命中的key合并批量加载
+         *
+         * @param bulkLoader 批量加载
+         * @return {@link AsyncMemoryCache}
+         */
+        public AsyncMemoryCache<K, V> buildBulk(MemoryCacheBulkLoader<K, V> bulkLoader) {
+            if (bulkLoader == null) {
+                throw new NullPointerException("bulkLoader");
+            }
+            return new AsyncMemoryCache<>(this, null, bulkLoader);
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package io.github.dousxcoder.tools.cache;
+
+/**
+ * 缓存key/value的序列化方式
+ * <br>
+ * 常用实现见{@link CacheCodecs}
+ *
+ * @param <T> 类型
+ * @author dousx
+ */
+public interface CacheCodec<T> {
+
+    /**
+     * 序列化
+     *
+     * @param value 对象(非null)
+     * @return 字节数组
+     */
+    byte[] encode(T value);
+
+    /**
+     * 反序列化
+     *
+     * @param bytes 字节数组
+     * @return 对象
+     */
+    T decode(byte[] bytes);
+}
@@ -0,0 +1,127 @@
+package io.github.dousxcoder.tools.cache;
+
+import io.github.dousxcoder.tools.io.CompatibleInputStream;
+import io.github.dousxcoder.tools.json.JsonUtilPool;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 常用的{@link CacheCodec}
+ *
+ * @author dousx
+ */
+public final class CacheCodecs {
+    private CacheCodecs() {
+    }
+
+    private static final CacheCodec<String> UTF8 = new CacheCodec<String>() {
+        @Override
+        public byte[] encode(String value) {
+            return value.getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public String decode(byte[] bytes) {
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    };
+
+    private static final CacheCodec<Long> LONG = new CacheCodec<Long>() {
+        @Override
+        public byte[] encode(Long value) {
+            long v = value;
+            byte[] bytes = new byte[Long.BYTES];
+            for (int i = Long.BYTES - 1; i >= 0; i--) {
+                bytes[i] = (byte) v;
+                v >>>= 8;
+            }
+            return bytes;
+        }
+
+        @Override
+        public Long decode(byte[] bytes) {
+            long v = 0;
+            for (byte b : bytes) {
+                v = (v << 8) | (b & 0xff);
+            }
+            return v;
+        }
+    };
+
+    /**
+     * UTF-8字符串
+     *
+     * @return {@link CacheCodec}
+     */
+    public static CacheCodec<String> utf8() {
+        return UTF8;
+    }
+
+    /**
+     * long(大端8字节)
+     *
+     * @return {@link CacheCodec}
+     */
+    public static CacheCodec<Long> longs() {
+        return LONG;
+    }
+
+    /**
+     * Java序列化，反序列化使用{@link CompatibleInputStream}兼容serialVersionUID不一致
+     *
+     * @param <T> 类型
+     * @return {@link CacheCodec}
+     */
+    public static <T extends Serializable> CacheCodec<T> serializable() {
+        return new CacheCodec<T>() {
+            @Override
+            public byte[] encode(T value) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+                try (ObjectOutputStream oos = new ObjectOutputStream(out)) {
+                    oos.writeObject(value);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return out.toByteArray();
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public T decode(byte[] bytes) {
+                try {
+                    return (T) CompatibleInputStream.byteToObject(bytes);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                } catch (ClassNotFoundException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        };
+    }
+
+    /**
+     * JSON(UTF-8)，使用{@link JsonUtilPool}
+     *
+     * @param clazz 类型
+     * @param <T>   类型
+     * @return {@link CacheCodec}
+     */
+    public static <T> CacheCodec<T> json(Class<T> clazz) {
+        return new CacheCodec<T>() {
+            @Override
+            public byte[] encode(T value) {
+                return JsonUtilPool.toJsonString(value).getBytes(StandardCharsets.UTF_8);
+            }
+
+            @Override
+            public T decode(byte[] bytes) {
+                return JsonUtilPool.parseObject(new String(bytes, StandardCharsets.UTF_8), clazz);
+            }
+        };
+    }
+}
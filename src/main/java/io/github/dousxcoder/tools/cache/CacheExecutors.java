@@ -0,0 +1,79 @@
+package io.github.dousxcoder.tools.cache;
+
+import cn.hutool.log.Log;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 缓存共用的线程池
+ *
+ * @author dousx
+ */
+public final class CacheExecutors {
+    private static final Log log = Log.get(CacheExecutors.class);
+
+    private CacheExecutors() {
+    }
+
+    /**
+     * 线程数
+     */
+    private static final int THREADS = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+    /**
+     * 等待队列长度
+     */
+    private static final int QUEUE_CAPACITY = 1024;
+
+    private static final ThreadPoolExecutor LOADER_EXECUTOR;
+
+    static {
+        LOADER_EXECUTOR = new ThreadPoolExecutor(THREADS, THREADS, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(QUEUE_CAPACITY),
+                new CacheMaintenanceScheduler.DaemonThreadFactory("cache-loader-"),
+                new ThreadPoolExecutor.AbortPolicy());
+        LOADER_EXECUTOR.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * 有界的加载/刷新线程池(守护线程)
+     * <br>
+     * 队列满时抛出{@link java.util.concurrent.RejectedExecutionException}，由调用方决定降级方式
+     *
+     * @return {@link Executor}
+     */
+    public static Executor loader() {
+        return LOADER_EXECUTOR;
+    }
+
+    /**
+     * 每个任务一个虚拟线程的线程池(JDK 21+)，低版本JDK返回{@link CacheExecutors#loader()}
+     * <br>
+     * 虚拟线程池没有队列上限，适合加载时主要在等待IO的场景
+     *
+     * @return {@link Executor}
+     */
+    public static Executor virtualThreads() {
+        return VirtualThreads.EXECUTOR;
+    }
+
+    /**
+     * 首次使用时才通过反射创建，兼容JDK 8编译
+     */
+    private static final class VirtualThreads {
+        private static final Executor EXECUTOR = create();
+
+        private static Executor create() {
+            try {
+                return (Executor) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                log.debug("当前JDK不支持虚拟线程,使用cache-loader线程池");
+                return LOADER_EXECUTOR;
+            }
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package io.github.dousxcoder.tools.cache;
+
+import cn.hutool.log.Log;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * 所有缓存共用的维护线程池
+ * <br>
+ * <ul>
+ *     <li>线程数固定且为守护线程，缓存实例再多也不会额外创建线程</li>
+ *     <li>首次执行时间在一个周期内随机分布，避免大量缓存同时唤醒</li>
+ *     <li>任务只弱引用缓存实例，实例未关闭就被回收时任务自动取消</li>
+ * </ul>
+ *
+ * @author dousx
+ */
+public final class CacheMaintenanceScheduler {
+    private static final Log log = Log.get(CacheMaintenanceScheduler.class);
+
+    /**
+     * 维护线程数
+     */
+    private static final int THREADS = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 4));
+
+    private static final ScheduledThreadPoolExecutor EXECUTOR;
+
+    static {
+        EXECUTOR = new ScheduledThreadPoolExecutor(THREADS, new DaemonThreadFactory("cache-maintenance-"));
+        EXECUTOR.setRemoveOnCancelPolicy(true);
+        EXECUTOR.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+    }
+
+    private CacheMaintenanceScheduler() {
+    }
+
+    /**
+     * 注册周期性维护任务
+     *
+     * @param owner  缓存实例(弱引用)
+     * @param task   维护任务
+     * @param period 执行周期
+     * @param unit   周期单位
+     * @param <T>    缓存类型
+     * @return 用于取消任务的句柄
+     */
+    public static <T> Registration register(T owner, Consumer<? super T> task, long period, TimeUnit unit) {
+        if (period <= 0) {
+            throw new IllegalArgumentException("period must be positive: " + period);
+        }
+        long periodNanos = unit.toNanos(period);
+        // 首次执行随机错开
+        long initialDelay = ThreadLocalRandom.current().nextLong(periodNanos) + 1;
+        MaintenanceTask<T> maintenanceTask = new MaintenanceTask<>(owner, task);
+        maintenanceTask.future = EXECUTOR.scheduleAtFixedRate(maintenanceTask, initialDelay, periodNanos, TimeUnit.NANOSECONDS);
+        return maintenanceTask;
+    }
+
+    /**
+     * 当前已注册的任务数量
+     *
+     * @return 任务数量
+     */
+    public static int registeredCount() {
+        return EXECUTOR.getQueue().size();
+    }
+
+    /**
+     * 维护任务句柄
+     */
+    public interface Registration extends AutoCloseable {
+        /**
+         * 取消任务，不抛出异常
+         */
+        @Override
+        void close();
+    }
+
+    private static final class MaintenanceTask<T> implements Runnable, Registration {
+        private final WeakReference<T> owner;
+        private final Consumer<? super T> task;
+        private volatile ScheduledFuture<?> future;
+
+        private MaintenanceTask(T owner, Consumer<? super T> task) {
+            this.owner = new WeakReference<>(owner);
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            T t = owner.get();
+            if (t == null) {
+                close();
+                return;
+            }
+            try {
+                task.accept(t);
+            } catch (Throwable e) {
+                // 异常会导致周期任务终止，这里只记录
+                log.error("缓存维护任务执行异常,cache {}", t, e);
+            }
+        }
+
+        @Override
+        public void close() {
+            ScheduledFuture<?> f = future;
+            if (f != null) {
+                f.cancel(false);
+            }
+        }
+    }
+
+    /**
+     * 守护线程工厂
+     */
+    static final class DaemonThreadFactory implements ThreadFactory {
+        private final AtomicInteger sequence = new AtomicInteger();
+        private final String prefix;
+
+        DaemonThreadFactory(String prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, prefix + sequence.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,350 @@
+package io.github.dousxcoder.tools.cache;
+
+import cn.hutool.log.Log;
+import com.google.common.cache.RemovalCause;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+/**
+ * 缓存运行指标
+ * <br>
+ * <ul>
+ *     <li>计数器均为{@link LongAdder}，读写线程只做一次无竞争的累加</li>
+ *     <li>get/put耗时记录在{@link LatencyHistogram}中</li>
+ *     <li>{@link CacheMetrics#toPrometheus(String)}输出Prometheus文本格式，
+ *     {@link CacheMetrics#report(Map, long, TimeUnit, Consumer)}定时输出到日志({@link CacheMetrics#logSink()})
+ *     或文件({@link CacheMetrics#fileSink(Path)})</li>
+ * </ul>
+ * 通过{@link MemoryCache.Builder#recordMetrics()}或{@link ExpiryMap#enableMetrics()}开启
+ *
+ * @author dousx
+ */
+public final class CacheMetrics {
+    private static final Log log = Log.get(CacheMetrics.class);
+
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder loadSuccess = new LongAdder();
+    private final LongAdder loadFailure = new LongAdder();
+    private final LongAdder totalLoadNanos = new LongAdder();
+    private final Map<RemovalCause, LongAdder> evictions = new EnumMap<>(RemovalCause.class);
+    private final LongAdder sweeps = new LongAdder();
+    private final LongAdder sweepNanos = new LongAdder();
+    private final LongAdder sweptEntries = new LongAdder();
+    private final LongAdder lockWaits = new LongAdder();
+    private final LongAdder lockWaitNanos = new LongAdder();
+    private final LatencyHistogram getLatency = new LatencyHistogram();
+    private final LatencyHistogram putLatency = new LatencyHistogram();
+
+    public CacheMetrics() {
+        for (RemovalCause cause : RemovalCause.values()) {
+            evictions.put(cause, new LongAdder());
+        }
+    }
+
+    void recordHit() {
+        hits.increment();
+    }
+
+    void recordMiss() {
+        misses.increment();
+    }
+
+    void recordLoad(boolean success, long nanos) {
+        (success ? loadSuccess : loadFailure).increment();
+        totalLoadNanos.add(nanos);
+    }
+
+    void recordRemoval(RemovalCause cause) {
+        evictions.get(cause).increment();
+    }
+
+    void recordSweep(long nanos, long expired) {
+        sweeps.increment();
+        sweepNanos.add(nanos);
+        sweptEntries.add(expired);
+    }
+
+    void recordLockWait(long nanos) {
+        lockWaits.increment();
+        lockWaitNanos.add(nanos);
+    }
+
+    void recordGet(long nanos) {
+        getLatency.record(nanos);
+    }
+
+    void recordPut(long nanos) {
+        putLatency.record(nanos);
+    }
+
+    public long hitCount() {
+        return hits.sum();
+    }
+
+    public long missCount() {
+        return misses.sum();
+    }
+
+    /**
+     * @return 命中率，没有请求时返回1
+     */
+    public double hitRate() {
+        long hit = hits.sum();
+        long total = hit + misses.sum();
+        return total == 0 ? 1 : (double) hit / total;
+    }
+
+    public long loadSuccessCount() {
+        return loadSuccess.sum();
+    }
+
+    /**
+     * @return 加载异常或返回null的次数
+     */
+    public long loadFailureCount() {
+        return loadFailure.sum();
+    }
+
+    /**
+     * @return 加载总耗时 纳秒
+     */
+    public long totalLoadTime() {
+        return totalLoadNanos.sum();
+    }
+
+    /**
+     * @param cause 移除原因
+     * @return 该原因的移除次数
+     */
+    public long evictionCount(RemovalCause cause) {
+        return evictions.get(cause).sum();
+    }
+
+    /**
+     * @return 按原因的移除次数
+     */
+    public Map<RemovalCause, Long> evictionCounts() {
+        Map<RemovalCause, Long> result = new EnumMap<>(RemovalCause.class);
+        evictions.forEach((cause, adder) -> result.put(cause, adder.sum()));
+        return result;
+    }
+
+    /**
+     * @return 过期清理执行次数
+     */
+    public long sweepCount() {
+        return sweeps.sum();
+    }
+
+    /**
+     * @return 过期清理总耗时 纳秒
+     */
+    public long totalSweepTime() {
+        return sweepNanos.sum();
+    }
+
+    /**
+     * @return 过期清理删除的条目数
+     */
+    public long sweptEntryCount() {
+        return sweptEntries.sum();
+    }
+
+    /**
+     * @return 等待锁的次数(未能立即获得锁)
+     */
+    public long lockWaitCount() {
+        return lockWaits.sum();
+    }
+
+    /**
+     * @return 等待锁的总耗时 纳秒
+     */
+    public long totalLockWaitTime() {
+        return lockWaitNanos.sum();
+    }
+
+    public LatencyHistogram getLatency() {
+        return getLatency;
+    }
+
+    public LatencyHistogram putLatency() {
+        return putLatency;
+    }
+
+    /**
+     * Prometheus文本格式
+     *
+     * @param cacheName 缓存名称，作为cache标签
+     * @return 文本
+     */
+    public String toPrometheus(String cacheName) {
+        return toPrometheus(Collections.singletonMap(cacheName, this));
+    }
+
+    /**
+     * 多个缓存输出为一份Prometheus文本，同名指标只输出一次HELP/TYPE
+     *
+     * @param metrics 缓存名称 -> 指标
+     * @return 文本
+     */
+    public static String toPrometheus(Map<String, CacheMetrics> metrics) {
+        StringBuilder sb = new StringBuilder(1024);
+        counter(sb, metrics, "cache_hits_total", "Cache hits", CacheMetrics::hitCount);
+        counter(sb, metrics, "cache_misses_total", "Cache misses", CacheMetrics::missCount);
+        counter(sb, metrics, "cache_load_success_total", "Successful loads", CacheMetrics::loadSuccessCount);
+        counter(sb, metrics, "cache_load_failure_total", "Failed or null loads", CacheMetrics::loadFailureCount);
+        seconds(sb, metrics, "cache_load_duration_seconds_total", "Total load time", CacheMetrics::totalLoadTime);
+        header(sb, "cache_evictions_total", "Removed entries by cause", "counter");
+        metrics.forEach((name, m) -> m.evictions.forEach((cause, adder) ->
+                sb.append("cache_evictions_total{cache=\"").append(escape(name))
+                        .append("\",cause=\"").append(cause.name().toLowerCase(Locale.ROOT)).append("\"} ")
+                        .append(adder.sum()).append('\n')));
+        counter(sb, metrics, "cache_expiry_sweeps_total", "Expiry sweeps", CacheMetrics::sweepCount);
+        seconds(sb, metrics, "cache_expiry_sweep_duration_seconds_total", "Total expiry sweep time", CacheMetrics::totalSweepTime);
+        counter(sb, metrics, "cache_expiry_swept_entries_total", "Entries removed by expiry sweeps", CacheMetrics::sweptEntryCount);
+        counter(sb, metrics, "cache_lock_waits_total", "Contended lock acquisitions", CacheMetrics::lockWaitCount);
+        seconds(sb, metrics, "cache_lock_wait_seconds_total", "Total lock wait time", CacheMetrics::totalLockWaitTime);
+        summary(sb, metrics, "cache_get_latency_seconds", "Get latency", CacheMetrics::getLatency);
+        summary(sb, metrics, "cache_put_latency_seconds", "Put latency", CacheMetrics::putLatency);
+        return sb.toString();
+    }
+
+    /**
+     * 定时输出本实例的指标
+     *
+     * @param cacheName 缓存名称
+     * @param period    输出周期
+     * @param unit      周期单位
+     * @param sink      输出方式
+     * @return 调用close停止输出
+     */
+    public CacheMaintenanceScheduler.Registration report(String cacheName, long period, TimeUnit unit, Consumer<String> sink) {
+        return report(Collections.singletonMap(cacheName, this), period, unit, sink);
+    }
+
+    /**
+     * 定时输出多个缓存的指标
+     * <br>
+     * 输出任务持有metrics，不需要调用方另外保留引用；不再需要时必须调用close
+     *
+     * @param metrics 缓存名称 -> 指标，可以在输出期间继续添加(需为线程安全的Map)
+     * @param period  输出周期
+     * @param unit    周期单位
+     * @param sink    输出方式
+     * @return 调用close停止输出
+     */
+    public static CacheMaintenanceScheduler.Registration report(Map<String, CacheMetrics> metrics, long period,
+                                                               TimeUnit unit, Consumer<String> sink) {
+        Reporter reporter = new Reporter(metrics, sink);
+        // 任务强引用reporter，调度器的弱引用不会被回收，直到调用close
+        return CacheMaintenanceScheduler.register(reporter, r -> reporter.run(), period, unit);
+    }
+
+    /**
+     * @return 以info级别写入日志
+     */
+    public static Consumer<String> logSink() {
+        return text -> log.info("cache metrics\n{}", text);
+    }
+
+    /**
+     * 写入文件(先写临时文件再原子替换)，可供node_exporter的textfile collector读取
+     *
+     * @param file 目标文件
+     * @return 输出方式
+     */
+    public static Consumer<String> fileSink(Path file) {
+        Path target = file.toAbsolutePath();
+        return text -> {
+            try {
+                Path tmp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+                try {
+                    Files.write(tmp, text.getBytes(StandardCharsets.UTF_8));
+                    Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } finally {
+                    Files.deleteIfExists(tmp);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        };
+    }
+
+    private static void header(StringBuilder sb, String name, String help, String type) {
+        sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        sb.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void counter(StringBuilder sb, Map<String, CacheMetrics> metrics, String name, String help,
+                                ToLongFunction<CacheMetrics> value) {
+        header(sb, name, help, "counter");
+        metrics.forEach((cache, m) -> sb.append(name).append("{cache=\"").append(escape(cache)).append("\"} ")
+                .append(value.applyAsLong(m)).append('\n'));
+    }
+
+    private static void seconds(StringBuilder sb, Map<String, CacheMetrics> metrics, String name, String help,
+                                ToLongFunction<CacheMetrics> nanos) {
+        header(sb, name, help, "counter");
+        metrics.forEach((cache, m) -> sb.append(name).append("{cache=\"").append(escape(cache)).append("\"} ")
+                .append(nanos.applyAsLong(m) / NANOS_PER_SECOND).append('\n'));
+    }
+
+    private static void summary(StringBuilder sb, Map<String, CacheMetrics> metrics, String name, String help,
+                                Function<CacheMetrics, LatencyHistogram> histogram) {
+        header(sb, name, help, "summary");
+        metrics.forEach((cache, m) -> {
+            LatencyHistogram h = histogram.apply(m);
+            String label = escape(cache);
+            for (double q : QUANTILES) {
+                sb.append(name).append("{cache=\"").append(label).append("\",quantile=\"").append(q).append("\"} ")
+                        .append(h.percentile(q) / NANOS_PER_SECOND).append('\n');
+            }
+            sb.append(name).append("_sum{cache=\"").append(label).append("\"} ")
+                    .append(h.sum() / NANOS_PER_SECOND).append('\n');
+            sb.append(name).append("_count{cache=\"").append(label).append("\"} ")
+                    .append(h.count()).append('\n');
+        });
+    }
+
+    private static String escape(String label) {
+        return label.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    private static final class Reporter {
+        private final Map<String, CacheMetrics> metrics;
+        private final Consumer<String> sink;
+
+        private Reporter(Map<String, CacheMetrics> metrics, Consumer<String> sink) {
+            this.metrics = metrics;
+            this.sink = sink;
+        }
+
+        private void run() {
+            try {
+                sink.accept(toPrometheus(new LinkedHashMap<>(metrics)));
+            } catch (RuntimeException e) {
+                log.warn("输出缓存指标失败", e);
+            }
+        }
+    }
+}
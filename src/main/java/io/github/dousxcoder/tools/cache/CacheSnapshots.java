@@ -0,0 +1,297 @@
+package io.github.dousxcoder.tools.cache;
+
+import cn.hutool.log.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 缓存快照，用于重启后预热
+ * <br>
+ * <ul>
+ *     <li>写入：边遍历边按块输出，不会把整个缓存复制到内存；先写临时文件再原子替换，写到一半失败不会破坏旧快照</li>
+ *     <li>读取：顺序读块，多个块并行反序列化写入缓存，停机期间已过期的数据直接丢弃</li>
+ *     <li>快照中保存的是过期时间点，恢复后的剩余有效期会扣除停机时长</li>
+ * </ul>
+ * 文件格式：[魔数 int][版本 int][块...][0 int]
+ * <br>
+ * 块格式：[块长度 int][条目数 int][条目...]，条目格式：[key长度 int][key][value长度 int][value][过期时间点 long]
+ *
+ * @author dousx
+ */
+public final class CacheSnapshots {
+    private static final Log log = Log.get(CacheSnapshots.class);
+
+    private static final int MAGIC = 0x43534E50;
+    private static final int VERSION = 1;
+
+    /**
+     * 块大小达到该值后输出
+     */
+    private static final int BLOCK_SIZE = 64 << 10;
+
+    /**
+     * 没有单独设置有效期的条目(恢复时使用缓存自身的过期策略)
+     */
+    static final long NO_DEADLINE = 0L;
+
+    private CacheSnapshots() {
+    }
+
+    /**
+     * 写入快照
+     *
+     * @param map        缓存
+     * @param file       快照文件
+     * @param keyCodec   key序列化
+     * @param valueCodec value序列化
+     * @param <K>        key
+     * @param <V>        value
+     * @return 写入的条目数
+     * @throws IOException 写入失败
+     */
+    public static <K, V> long write(ExpiryMap<K, V> map, Path file, CacheCodec<K> keyCodec, CacheCodec<V> valueCodec) throws IOException {
+        return write(file, keyCodec, valueCodec, map::forEachLive);
+    }
+
+    /**
+     * 写入快照，只单独设置过有效期的条目会保存过期时间点
+     *
+     * @param cache      缓存
+     * @param file       快照文件
+     * @param keyCodec   key序列化
+     * @param valueCodec value序列化
+     * @param <K>        key
+     * @param <V>        value
+     * @return 写入的条目数
+     * @throws IOException 写入失败
+     */
+    public static <K, V> long write(MemoryCache<K, V> cache, Path file, CacheCodec<K> keyCodec, CacheCodec<V> valueCodec) throws IOException {
+        return write(file, keyCodec, valueCodec, cache::forEachLive);
+    }
+
+    /**
+     * 读取快照写入缓存
+     *
+     * @param file       快照文件
+     * @param map        缓存
+     * @param keyCodec   key序列化
+     * @param valueCodec value序列化
+     * @param <K>        key
+     * @param <V>        value
+     * @return 恢复的条目数(不含已过期的)
+     * @throws IOException 读取失败或格式错误
+     */
+    public static <K, V> long read(Path file, ExpiryMap<K, V> map, CacheCodec<K> keyCodec, CacheCodec<V> valueCodec) throws IOException {
+        return read(file, keyCodec, valueCodec, (key, value, deadline) -> {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining > 0) {
+                map.put(key, value, remaining);
+            }
+        });
+    }
+
+    /**
+     * 读取快照写入缓存
+     *
+     * @param file       快照文件
+     * @param cache      缓存
+     * @param keyCodec   key序列化
+     * @param valueCodec value序列化
+     * @param <K>        key
+     * @param <V>        value
+     * @return 恢复的条目数(不含已过期的)
+     * @throws IOException 读取失败或格式错误
+     */
+    public static <K, V> long read(Path file, MemoryCache<K, V> cache, CacheCodec<K> keyCodec, CacheCodec<V> valueCodec) throws IOException {
+        return read(file, keyCodec, valueCodec, (key, value, deadline) -> {
+            if (deadline == NO_DEADLINE) {
+                cache.put(key, value);
+                return;
+            }
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining > 0) {
+                cache.put(key, value, remaining, TimeUnit.MILLISECONDS);
+            }
+        });
+    }
+
+    private static <K, V> long write(Path file, CacheCodec<K> keyCodec, CacheCodec<V> valueCodec,
+                                     Source<K, V> source) throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path temp = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+        try {
+            long count;
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), BLOCK_SIZE))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                BlockWriter<K, V> writer = new BlockWriter<>(out, keyCodec, valueCodec);
+                source.forEachLive(writer);
+                writer.flush();
+                out.writeInt(0);
+                count = writer.total;
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return count;
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static <K, V> long read(Path file, CacheCodec<K> keyCodec, CacheCodec<V> valueCodec,
+                                    EntryVisitor<K, V> sink) throws IOException {
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        // 限制已读入内存但尚未处理的块数
+        Semaphore permits = new Semaphore(pool.getParallelism() * 2);
+        LongAdder restored = new LongAdder();
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        try (InputStream in = Files.newInputStream(file)) {
+            DataInputStream data = new DataInputStream(new BufferedInputStream(in, BLOCK_SIZE));
+            if (data.readInt() != MAGIC) {
+                throw new IOException("not a cache snapshot: " + file);
+            }
+            int version = data.readInt();
+            if (version != VERSION) {
+                throw new IOException("unsupported snapshot version " + version + ": " + file);
+            }
+            int length;
+            while ((length = data.readInt()) > 0) {
+                int count = data.readInt();
+                byte[] block = new byte[length];
+                data.readFully(block);
+                permits.acquireUninterruptibly();
+                futures.add(CompletableFuture.runAsync(() -> decode(block, count, keyCodec, valueCodec, sink, restored), pool)
+                        .whenComplete((v, e) -> permits.release()));
+            }
+        } catch (EOFException e) {
+            throw new IOException("truncated snapshot: " + file, e);
+        } finally {
+            awaitAll(futures);
+        }
+        log.debug("从快照{}恢复{}条缓存", file, restored.sum());
+        return restored.sum();
+    }
+
+    private static <K, V> void decode(byte[] block, int count, CacheCodec<K> keyCodec, CacheCodec<V> valueCodec,
+                                      EntryVisitor<K, V> sink, LongAdder restored) {
+        ByteBuffer buffer = ByteBuffer.wrap(block);
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < count; i++) {
+            byte[] keyBytes = new byte[buffer.getInt()];
+            buffer.get(keyBytes);
+            byte[] valueBytes = new byte[buffer.getInt()];
+            buffer.get(valueBytes);
+            long deadline = buffer.getLong();
+            if (deadline != NO_DEADLINE && deadline <= now) {
+                continue;
+            }
+            try {
+                sink.visit(keyCodec.decode(keyBytes), valueCodec.decode(valueBytes), deadline);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            restored.increment();
+        }
+    }
+
+    private static void awaitAll(List<CompletableFuture<Void>> futures) throws IOException {
+        try {
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) cause).getCause();
+            }
+            throw new IOException("snapshot decode failed", cause);
+        }
+    }
+
+    /**
+     * 条目回调
+     */
+    @FunctionalInterface
+    interface EntryVisitor<K, V> {
+        /**
+         * @param key      key
+         * @param value    value
+         * @param deadline 过期时间点(毫秒)，{@link CacheSnapshots#NO_DEADLINE}表示使用缓存自身的过期策略
+         * @throws IOException 写入失败
+         */
+        void visit(K key, V value, long deadline) throws IOException;
+    }
+
+    @FunctionalInterface
+    private interface Source<K, V> {
+        void forEachLive(EntryVisitor<K, V> visitor) throws IOException;
+    }
+
+    /**
+     * 按块输出，块内条目先写入可复用的缓冲区
+     */
+    private static final class BlockWriter<K, V> implements EntryVisitor<K, V> {
+        private final DataOutputStream out;
+        private final CacheCodec<K> keyCodec;
+        private final CacheCodec<V> valueCodec;
+        private ByteBuffer block = ByteBuffer.allocate(BLOCK_SIZE);
+        private int count;
+        private long total;
+
+        private BlockWriter(DataOutputStream out, CacheCodec<K> keyCodec, CacheCodec<V> valueCodec) {
+            this.out = out;
+            this.keyCodec = keyCodec;
+            this.valueCodec = valueCodec;
+        }
+
+        @Override
+        public void visit(K key, V value, long deadline) throws IOException {
+            byte[] keyBytes = keyCodec.encode(key);
+            byte[] valueBytes = valueCodec.encode(value);
+            int size = 16 + keyBytes.length + valueBytes.length;
+            if (block.remaining() < size) {
+                flush();
+                if (block.capacity() < size) {
+                    // 超大条目单独成块
+                    block = ByteBuffer.allocate(size);
+                }
+            }
+            block.putInt(keyBytes.length).put(keyBytes)
+                    .putInt(valueBytes.length).put(valueBytes)
+                    .putLong(deadline);
+            count++;
+            total++;
+        }
+
+        private void flush() throws IOException {
+            if (count == 0) {
+                return;
+            }
+            out.writeInt(block.position());
+            out.writeInt(count);
+            out.write(block.array(), 0, block.position());
+            block.clear();
+            if (block.capacity() > BLOCK_SIZE) {
+                block = ByteBuffer.allocate(BLOCK_SIZE);
+            }
+            count = 0;
+        }
+    }
+}
@@ -0,0 +1,369 @@
+package io.github.dousxcoder.tools.cache;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 带有效期map 无锁实现
+ * <br>
+ * value和过期时间保存在同一个节点中，只占用一个{@link ConcurrentHashMap}：
+ * <ul>
+ *     <li>读操作不加锁，读取时顺带判断是否过期</li>
+ *     <li>写操作依赖{@link ConcurrentHashMap}的分桶锁/CAS，过期时间通过{@link DeadlineQueue}异步调度</li>
+ *     <li>{@link ConcurrentExpiryMap#size()}、{@link ConcurrentExpiryMap#isEmpty()}可能包含尚未清理的过期数据</li>
+ * </ul>
+ *
+ * @author dousx
+ */
+public class ConcurrentExpiryMap<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>, AutoCloseable {
+
+    /**
+     * 用于定时清除已过期缓存
+     */
+    private final CacheMaintenanceScheduler.Registration maintenance;
+
+    /**
+     * key -> value和过期时间
+     */
+    private final ConcurrentHashMap<K, ValueNode<K, V>> data;
+
+    /**
+     * 过期时间调度
+     */
+    private final DeadlineQueue<K> deadlineQueue = new DeadlineQueue<>();
+
+    /**
+     * 默认有效期 毫秒
+     */
+    private final long expiry;
+
+    private EntrySet entrySet;
+
+    /**
+     * @param expiryTime 单位毫秒（不可小于0）
+     */
+    public ConcurrentExpiryMap(long expiryTime) {
+        this(1 << 4, expiryTime);
+    }
+
+    /**
+     * @param initialCapacity 初始容量
+     * @param expiryTime      单位毫秒（不可小于0）
+     */
+    public ConcurrentExpiryMap(int initialCapacity, long expiryTime) {
+        if (expiryTime <= 0) {
+            throw new IllegalArgumentException("expiryTime must be positive: " + expiryTime);
+        }
+        this.data = new ConcurrentHashMap<>(initialCapacity);
+        this.expiry = expiryTime;
+        this.maintenance = CacheMaintenanceScheduler.register(this, ConcurrentExpiryMap::clearExpiredCache, 1, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public V get(Object key) {
+        if (key == null) {
+            return null;
+        }
+        return valueOf(key, data.get(key), System.currentTimeMillis());
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    @Override
+    public V put(K key, V value) {
+        return put(key, value, this.expiry);
+    }
+
+    /**
+     * @param key        key
+     * @param value      value
+     * @param expiryTime 键值对有效期 毫秒
+     * @return 之前未过期的value
+     */
+    public V put(K key, V value, long expiryTime) {
+        checkNotNull(key, value);
+        long now = System.currentTimeMillis();
+        ValueNode<K, V> node = new ValueNode<>(key, value, now + expiryTime);
+        ValueNode<K, V> old = data.put(key, node);
+        deadlineQueue.schedule(node);
+        return retire(old, now);
+    }
+
+    @Override
+    public V putIfAbsent(K key, V value) {
+        return putIfAbsent(key, value, this.expiry);
+    }
+
+    /**
+     * key不存在或已过期时写入
+     *
+     * @param key        key
+     * @param value      value
+     * @param expiryTime 键值对有效期 毫秒
+     * @return 已存在且未过期的value，写入成功时返回null
+     */
+    public V putIfAbsent(K key, V value, long expiryTime) {
+        checkNotNull(key, value);
+        long now = System.currentTimeMillis();
+        ValueNode<K, V> node = new ValueNode<>(key, value, now + expiryTime);
+        while (true) {
+            ValueNode<K, V> current = data.putIfAbsent(key, node);
+            if (current == null) {
+                deadlineQueue.schedule(node);
+                return null;
+            }
+            if (!current.isExpired(now)) {
+                return current.value;
+            }
+            if (data.replace(key, current, node)) {
+                deadlineQueue.schedule(node);
+                deadlineQueue.retire(current);
+                return null;
+            }
+        }
+    }
+
+    @Override
+    public V remove(Object key) {
+        if (key == null) {
+            return null;
+        }
+        return retire(data.remove(key), System.currentTimeMillis());
+    }
+
+    @Override
+    public boolean remove(Object key, Object value) {
+        if (key == null || value == null) {
+            return false;
+        }
+        ValueNode<K, V> current = data.get(key);
+        long now = System.currentTimeMillis();
+        if (current == null || current.isExpired(now) || !value.equals(current.value)) {
+            return false;
+        }
+        if (data.remove(key, current)) {
+            deadlineQueue.retire(current);
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public V replace(K key, V value) {
+        checkNotNull(key, value);
+        long now = System.currentTimeMillis();
+        ValueNode<K, V> node = new ValueNode<>(key, value, now + this.expiry);
+        while (true) {
+            ValueNode<K, V> current = data.get(key);
+            if (current == null || current.isExpired(now)) {
+                return null;
+            }
+            if (data.replace(key, current, node)) {
+                deadlineQueue.schedule(node);
+                deadlineQueue.retire(current);
+                return current.value;
+            }
+        }
+    }
+
+    @Override
+    public boolean replace(K key, V oldValue, V newValue) {
+        checkNotNull(key, newValue);
+        if (oldValue == null) {
+            return false;
+        }
+        long now = System.currentTimeMillis();
+        ValueNode<K, V> current = data.get(key);
+        if (current == null || current.isExpired(now) || !oldValue.equals(current.value)) {
+            return false;
+        }
+        ValueNode<K, V> node = new ValueNode<>(key, newValue, now + this.expiry);
+        if (data.replace(key, current, node)) {
+            deadlineQueue.schedule(node);
+            deadlineQueue.retire(current);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 数量(可能包含尚未清理的过期数据)
+     *
+     * @return 数量
+     */
+    @Override
+    public int size() {
+        return data.size();
+    }
+
+    /**
+     * 是否为空(可能包含尚未清理的过期数据)
+     *
+     * @return 是否为空
+     */
+    @Override
+    public boolean isEmpty() {
+        return data.isEmpty();
+    }
+
+    @Override
+    public void clear() {
+        for (K key : data.keySet()) {
+            remove(key);
+        }
+    }
+
+    @Override
+    public Set<Entry<K, V>> entrySet() {
+        EntrySet es = entrySet;
+        return es != null ? es : (entrySet = new EntrySet());
+    }
+
+    /**
+     * 清除过期缓存
+     * <br>
+     * 只处理时间轮中到期的节点，不扫描整个map
+     */
+    public void clearExpiredCache() {
+        deadlineQueue.expire(System.currentTimeMillis(), node -> {
+            if (data.remove(node.getKey(), node)) {
+                node.retire();
+            }
+        });
+    }
+
+    /**
+     * 停止定时清理，已过期的key仍会在访问时移除
+     */
+    @Override
+    public void close() {
+        maintenance.close();
+    }
+
+    private V valueOf(Object key, ValueNode<K, V> node, long now) {
+        if (node == null) {
+            return null;
+        }
+        if (node.isExpired(now)) {
+            if (data.remove(key, node)) {
+                deadlineQueue.retire(node);
+            }
+            return null;
+        }
+        return node.value;
+    }
+
+    private V retire(ValueNode<K, V> old, long now) {
+        if (old == null) {
+            return null;
+        }
+        deadlineQueue.retire(old);
+        return old.isExpired(now) ? null : old.value;
+    }
+
+    private static void checkNotNull(Object key, Object value) {
+        if (key == null || value == null) {
+            throw new NullPointerException();
+        }
+    }
+
+    /**
+     * value和过期时间
+     */
+    static final class ValueNode<K, V> extends TimingWheel.Node<K> {
+        final V value;
+
+        ValueNode(K key, V value, long deadline) {
+            super(key, deadline);
+            this.value = value;
+        }
+    }
+
+    /**
+     * 只包含未过期数据的视图
+     */
+    private final class EntrySet extends AbstractSet<Entry<K, V>> {
+        @Override
+        public Iterator<Entry<K, V>> iterator() {
+            return new EntryIterator();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            if (!(o instanceof Map.Entry)) {
+                return false;
+            }
+            Entry<?, ?> e = (Entry<?, ?>) o;
+            V v = ConcurrentExpiryMap.this.get(e.getKey());
+            return v != null && v.equals(e.getValue());
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            if (!(o instanceof Map.Entry)) {
+                return false;
+            }
+            Entry<?, ?> e = (Entry<?, ?>) o;
+            return ConcurrentExpiryMap.this.remove(e.getKey(), e.getValue());
+        }
+
+        @Override
+        public int size() {
+            return ConcurrentExpiryMap.this.size();
+        }
+
+        @Override
+        public void clear() {
+            ConcurrentExpiryMap.this.clear();
+        }
+    }
+
+    private final class EntryIterator implements Iterator<Entry<K, V>> {
+        private final Iterator<ValueNode<K, V>> iterator = data.values().iterator();
+        private final long now = System.currentTimeMillis();
+        private ValueNode<K, V> next;
+        private ValueNode<K, V> last;
+
+        @Override
+        public boolean hasNext() {
+            while (next == null && iterator.hasNext()) {
+                ValueNode<K, V> node = iterator.next();
+                if (!node.isExpired(now)) {
+                    next = node;
+                }
+            }
+            return next != null;
+        }
+
+        @Override
+        public Entry<K, V> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            last = next;
+            next = null;
+            return new SimpleImmutableEntry<>(last.getKey(), last.value);
+        }
+
+        @Override
+        public void remove() {
+            if (last == null) {
+                throw new IllegalStateException();
+            }
+            if (data.remove(last.getKey(), last)) {
+                deadlineQueue.retire(last);
+            }
+            last = null;
+        }
+    }
+}
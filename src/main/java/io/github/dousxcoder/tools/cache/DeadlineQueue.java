@@ -0,0 +1,110 @@
+package io.github.dousxcoder.tools.cache;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * 线程安全的过期时间队列
+ * <br>
+ * 写线程只把节点放入无锁缓冲区，由持有锁的一方批量写入{@link TimingWheel}，
+ * 读写线程不会在时间轮上竞争同一把锁
+ *
+ * @author dousx
+ */
+class DeadlineQueue<K> {
+
+    /**
+     * 写线程平均每写入多少次尝试顺带整理一次缓冲区(2的幂)
+     */
+    private static final int DRAIN_SAMPLE = 64;
+
+    /**
+     * 待调度/待取消的节点
+     */
+    private final Queue<TimingWheel.Node<K>> writeBuffer = new ConcurrentLinkedQueue<>();
+
+    /**
+     * 保护{@link DeadlineQueue#timingWheel}
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final TimingWheel<K> timingWheel = new TimingWheel<>(System.currentTimeMillis());
+
+    /**
+     * 调度节点(新增或过期时间变更)
+     *
+     * @param node 节点
+     */
+    void schedule(TimingWheel.Node<K> node) {
+        writeBuffer.offer(node);
+        maybeDrain();
+    }
+
+    /**
+     * 取消节点(被替换或删除)
+     *
+     * @param node 节点
+     */
+    void retire(TimingWheel.Node<K> node) {
+        node.retire();
+        writeBuffer.offer(node);
+        maybeDrain();
+    }
+
+    /**
+     * 整理缓冲区并推进时间轮
+     *
+     * @param now       当前时间(毫秒)
+     * @param onExpired 过期回调(持有锁时调用，不能阻塞)
+     */
+    void expire(long now, Consumer<TimingWheel.Node<K>> onExpired) {
+        lock.lock();
+        try {
+            drainBuffer();
+            timingWheel.advance(now, onExpired);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 时间轮中的节点数量
+     *
+     * @return 节点数量
+     */
+    int scheduledSize() {
+        lock.lock();
+        try {
+            drainBuffer();
+            return timingWheel.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void maybeDrain() {
+        // 锁可重入：过期回调中的retire/schedule不能在推进时间轮的同一线程中整理缓冲区
+        if ((ThreadLocalRandom.current().nextInt() & (DRAIN_SAMPLE - 1)) == 0 && !lock.isHeldByCurrentThread()
+                && lock.tryLock()) {
+            try {
+                drainBuffer();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private void drainBuffer() {
+        TimingWheel.Node<K> node;
+        while ((node = writeBuffer.poll()) != null) {
+            if (node.isRetired()) {
+                timingWheel.deschedule(node);
+            } else {
+                timingWheel.schedule(node);
+            }
+        }
+    }
+}
@@ -0,0 +1,336 @@
+package io.github.dousxcoder.tools.cache;
+
+import cn.hutool.log.Log;
+import com.google.common.cache.CacheStats;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 防击穿缓存(提前重算)
+ * <br>
+ * 热点key到期的瞬间所有请求同时未命中会一起打到后端，这里通过三种方式把重算分散开：
+ * <ul>
+ *     <li>概率提前过期(XFetch)：临近过期时每次读取以 now - delta * beta * ln(random) >= 过期时间 的概率触发异步重算，
+ *     delta为上次重算耗时，重算越慢越早开始</li>
+ *     <li>过期后宽限期内返回旧值，同时在后台重算(stale-while-revalidate)</li>
+ *     <li>加载结果为null时单独按较短的有效期缓存空结果，不存在的key不会反复打到后端</li>
+ * </ul>
+ * 同一个key同时只有一个重算任务；完全未命中时调用线程同步加载，并发请求等待同一个结果
+ *
+ * @author dousx
+ */
+public class EarlyRecomputeCache<K, V> implements AutoCloseable {
+    private static final Log log = Log.get(EarlyRecomputeCache.class);
+
+    /**
+     * 数据及过期时间，宽限期结束后才从map中删除
+     */
+    private final ConcurrentExpiryMap<K, Entry<V>> data;
+    private final ConcurrentHashMap<K, CompletableFuture<Entry<V>>> inFlight = new ConcurrentHashMap<>();
+    private final MemoryCacheLoader<K, V> loader;
+    private final Executor executor;
+
+    /**
+     * 以下时间单位均为毫秒
+     */
+    private final long ttl;
+    private final long staleWhileRevalidate;
+    private final long negativeTtl;
+    private final double beta;
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder loadSuccessCount = new LongAdder();
+    private final LongAdder loadExceptionCount = new LongAdder();
+    private final LongAdder totalLoadTime = new LongAdder();
+    private final LongAdder earlyRecomputeCount = new LongAdder();
+    private final LongAdder staleHitCount = new LongAdder();
+
+    private EarlyRecomputeCache(Builder<K, V> builder, MemoryCacheLoader<K, V> loader) {
+        this.loader = loader;
+        this.executor = builder.executor;
+        this.ttl = builder.ttl;
+        this.staleWhileRevalidate = builder.staleWhileRevalidate;
+        this.negativeTtl = builder.negativeTtl;
+        this.beta = builder.beta;
+        this.data = new ConcurrentExpiryMap<>(ttl + staleWhileRevalidate);
+    }
+
+    public static <K, V> Builder<K, V> builder() {
+        return new Builder<>();
+    }
+
+    /**
+     * @param key key
+     * @return value，加载结果为null或加载失败时返回null
+     */
+    public V get(K key) {
+        Entry<V> entry = data.get(key);
+        if (entry == null) {
+            missCount.increment();
+            Entry<V> loaded = loadSync(key);
+            return loaded == null ? null : loaded.value;
+        }
+        hitCount.increment();
+        long now = System.currentTimeMillis();
+        if (now >= entry.expiresAt) {
+            // 宽限期内返回旧值
+            staleHitCount.increment();
+            recomputeAsync(key, entry);
+        } else if (shouldRecomputeEarly(entry, now)) {
+            recomputeAsync(key, entry);
+        }
+        return entry.value;
+    }
+
+    /**
+     * 直接写入，覆盖正在进行的重算结果之前的数据
+     *
+     * @param key   key
+     * @param value value，为null时按空结果缓存
+     */
+    public void put(K key, V value) {
+        store(key, new Entry<>(value, value == null ? negativeTtl : ttl, 0, System.currentTimeMillis()));
+    }
+
+    public void invalidate(K key) {
+        data.remove(key);
+    }
+
+    public void invalidateAll() {
+        data.clear();
+    }
+
+    /**
+     * 数量(可能包含宽限期内和尚未清理的过期数据)
+     *
+     * @return 数量
+     */
+    public int size() {
+        return data.size();
+    }
+
+    /**
+     * 命中统计，命中包含宽限期内返回旧值的情况
+     *
+     * @return {@link CacheStats}
+     */
+    public CacheStats stats() {
+        return new CacheStats(hitCount.sum(), missCount.sum(), loadSuccessCount.sum(), loadExceptionCount.sum(),
+                totalLoadTime.sum(), 0);
+    }
+
+    /**
+     * @return 概率提前触发重算的次数
+     */
+    public long earlyRecomputeCount() {
+        return earlyRecomputeCount.sum();
+    }
+
+    /**
+     * @return 过期后宽限期内返回旧值的次数
+     */
+    public long staleHitCount() {
+        return staleHitCount.sum();
+    }
+
+    @Override
+    public void close() {
+        data.close();
+    }
+
+    /**
+     * XFetch：now - delta * beta * ln(random) >= expiresAt
+     */
+    private boolean shouldRecomputeEarly(Entry<V> entry, long now) {
+        if (entry.delta <= 0 || beta <= 0) {
+            return false;
+        }
+        double random = ThreadLocalRandom.current().nextDouble();
+        return now - entry.delta * beta * Math.log(random) >= entry.expiresAt;
+    }
+
+    private Entry<V> loadSync(K key) {
+        CompletableFuture<Entry<V>> future = new CompletableFuture<>();
+        CompletableFuture<Entry<V>> running = inFlight.putIfAbsent(key, future);
+        if (running != null) {
+            // 加载失败时返回null，不抛出异常
+            return running.handle((v, e) -> e == null ? v : null).join();
+        }
+        return compute(key, future);
+    }
+
+    /**
+     * @param key      key
+     * @param observed 触发重算时读到的数据，已被其他线程替换时不再重算
+     */
+    private void recomputeAsync(K key, Entry<V> observed) {
+        CompletableFuture<Entry<V>> future = new CompletableFuture<>();
+        if (inFlight.putIfAbsent(key, future) != null) {
+            return;
+        }
+        if (data.get(key) != observed) {
+            inFlight.remove(key, future);
+            future.complete(null);
+            return;
+        }
+        if (observed.expiresAt > System.currentTimeMillis()) {
+            earlyRecomputeCount.increment();
+        }
+        try {
+            executor.execute(() -> compute(key, future));
+        } catch (RejectedExecutionException e) {
+            // 线程池饱和时继续返回旧值，下次读取再尝试
+            inFlight.remove(key, future);
+            future.complete(null);
+            log.debug("重算任务被拒绝,key:{}", key);
+        }
+    }
+
+    private Entry<V> compute(K key, CompletableFuture<Entry<V>> future) {
+        long start = System.nanoTime();
+        try {
+            V value = loader.load(key);
+            long elapsed = System.nanoTime() - start;
+            totalLoadTime.add(elapsed);
+            loadSuccessCount.increment();
+            Entry<V> entry = new Entry<>(value, value == null ? negativeTtl : ttl,
+                    TimeUnit.NANOSECONDS.toMillis(elapsed), System.currentTimeMillis());
+            store(key, entry);
+            future.complete(entry);
+            return entry;
+        } catch (Throwable e) {
+            // 失败时保留旧值，宽限期结束后自然过期
+            totalLoadTime.add(System.nanoTime() - start);
+            loadExceptionCount.increment();
+            log.warn("加载key:{} 异常", key, e);
+            future.completeExceptionally(e);
+            return null;
+        } finally {
+            inFlight.remove(key, future);
+        }
+    }
+
+    private void store(K key, Entry<V> entry) {
+        // 空结果不提供宽限期
+        long retention = entry.value == null ? negativeTtl : ttl + staleWhileRevalidate;
+        data.put(key, entry, retention);
+    }
+
+    private static final class Entry<V> {
+        /**
+         * null表示空结果
+         */
+        private final V value;
+        private final long expiresAt;
+
+        /**
+         * 上次重算耗时 毫秒
+         */
+        private final long delta;
+
+        private Entry(V value, long ttl, long delta, long now) {
+            this.value = value;
+            this.expiresAt = now + ttl;
+            this.delta = delta;
+        }
+    }
+
+    public static final class Builder<K, V> {
+        private long ttl = TimeUnit.MINUTES.toMillis(5);
+        private long staleWhileRevalidate = TimeUnit.SECONDS.toMillis(30);
+        private long negativeTtl = TimeUnit.SECONDS.toMillis(5);
+        private double beta = 1.0;
+        private Executor executor = CacheExecutors.loader();
+
+        private Builder() {
+        }
+
+        /**
+         * 有效期(默认5分钟)
+         *
+         * @param duration 有效期
+         * @param unit     有效期单位
+         * @return this
+         */
+        public Builder<K, V> ttl(long duration, TimeUnit unit) {
+            if (duration <= 0) {
+                throw new IllegalArgumentException("ttl must be positive: " + duration);
+            }
+            this.ttl = unit.toMillis(duration);
+            return this;
+        }
+
+        /**
+         * 过期后继续返回旧值并在后台重算的宽限期(默认30秒)，0表示不返回旧值
+         *
+         * @param duration 宽限期
+         * @param unit     宽限期单位
+         * @return this
+         */
+        public Builder<K, V> staleWhileRevalidate(long duration, TimeUnit unit) {
+            if (duration < 0) {
+                throw new IllegalArgumentException("staleWhileRevalidate must not be negative: " + duration);
+            }
+            this.staleWhileRevalidate = unit.toMillis(duration);
+            return this;
+        }
+
+        /**
+         * 空结果的有效期(默认5秒)
+         *
+         * @param duration 有效期
+         * @param unit     有效期单位
+         * @return this
+         */
+        public Builder<K, V> negativeTtl(long duration, TimeUnit unit) {
+            if (duration <= 0) {
+                throw new IllegalArgumentException("negativeTtl must be positive: " + duration);
+            }
+            this.negativeTtl = unit.toMillis(duration);
+            return this;
+        }
+
+        /**
+         * 提前重算的倾向(默认1.0)，大于1更早重算，0表示关闭概率提前过期
+         *
+         * @param beta beta
+         * @return this
+         */
+        public Builder<K, V> beta(double beta) {
+            if (beta < 0) {
+                throw new IllegalArgumentException("beta must not be negative: " + beta);
+            }
+            this.beta = beta;
+            return this;
+        }
+
+        /**
+         * 后台重算线程池，默认{@link CacheExecutors#loader()}
+         *
+         * @param executor 线程池
+         * @return this
+         */
+        public Builder<K, V> executor(Executor executor) {
+            this.executor = executor;
+            return this;
+        }
+
+        /**
+         * @param loader 数据加载
+         * @return {@link EarlyRecomputeCache}
+         */
+        public EarlyRecomputeCache<K, V> build(MemoryCacheLoader<K, V> loader) {
+            if (loader == null) {
+                throw new NullPointerException("loader");
+            }
+            return new EarlyRecomputeCache<>(this, loader);
+        }
+    }
+}
@@ -1,44 +1,101 @@
 package io.github.dousxcoder.tools.cache;
 
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.Weigher;
+
+import java.io.IOException;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiFunction;
+import java.util.function.Function;
 
 /**
  * 带有效期map 简单实现 实现了基本的方法
+ * <br>
+ * 过期时间由分层时间轮{@link TimingWheel}管理，清理时只处理到期的key，不扫描整个map
+ * <br>
+ * 指定最大数量/权重时按W-TinyLFU({@link TinyLfuPolicy})淘汰，扫描型流量不会挤掉热点key
+ * <br>
+ * {@link ExpiryMap#enableMetrics()}后记录get/put耗时、锁等待时间、过期清理耗时等{@link CacheMetrics}
+ * <br>
+ * putIfAbsent、replace、remove(key, value)、compute系列和merge在锁内执行并同步过期时间，已过期的key视为不存在；
+ * 回调函数在锁内执行，不应有耗时操作。批量操作{@link ExpiryMap#getAll(Iterable)}、{@link ExpiryMap#putAll(Map, long)}、
+ * {@link ExpiryMap#removeAll(Iterable)}整批只加一次锁
+ * <br>
+ * {@link ExpiryMap#expireAfterAccess(long)}创建的实例每次读取都会按条目自己的有效期重新计算过期时间
  *
  * @author dousx
  */
-public class ExpiryMap<K, V> extends ConcurrentHashMap<K, V> {
+public class ExpiryMap<K, V> extends ConcurrentHashMap<K, V> implements AutoCloseable {
 
     private static final long serialVersionUID = 1L;
 
     /**
      * 用于定时清除已过期缓存
      */
-    private final ScheduledExecutorService scheduledExecutorService = Executors.newSingleThreadScheduledExecutor();
+    private final transient CacheMaintenanceScheduler.Registration maintenance;
     /**
      * 同步锁
      */
     private Lock lock;
 
     /**
-     * value为过期时间
+     * value为过期时间节点
      */
-    private ConcurrentHashMap<K, Long> expiryMap = new ConcurrentHashMap<>();
+    private ConcurrentHashMap<K, ExpiryNode<K>> expiryMap = new ConcurrentHashMap<>();
+
+    /**
+     * 过期时间轮(由{@link ExpiryMap#lock}保护)
+     */
+    private final TimingWheel<K> timingWheel = new TimingWheel<>(System.currentTimeMillis());
 
     /**
      * default expiry time 2m
      */
     private long expiry = 1000 * 60 * 2;
 
+    /**
+     * 读取时是否顺延过期时间
+     */
+    private final boolean expireAfterAccess;
+
+    /**
+     * 容量淘汰策略，不限制容量时为null(由{@link ExpiryMap#lock}保护)
+     */
+    private final transient TinyLfuPolicy<K> policy;
+
+    /**
+     * 权重计算，按数量限制时每个key权重为1
+     */
+    private final transient Weigher<? super K, ? super V> weigher;
+
+    private final transient LongAdder hitCount = new LongAdder();
+    private final transient LongAdder missCount = new LongAdder();
+    private final transient LongAdder evictionCount = new LongAdder();
+
+    /**
+     * 热点key统计，未开启时为null
+     */
+    private transient volatile HotKeyTracker<K> hotKeyTracker;
+
+    /**
+     * 运行指标，未开启时为null
+     */
+    private transient volatile CacheMetrics metrics;
+
 
     /**
      * @param expiryTime 单位毫秒（不可小于0）
@@ -52,34 +109,76 @@ public class ExpiryMap<K, V> extends ConcurrentHashMap<K, V> {
      * @param expiryTime      单位毫秒
      */
     public ExpiryMap(int initialCapacity, long expiryTime) {
+        this(initialCapacity, expiryTime, -1, null);
+    }
+
+    /**
+     * 限制最大数量，超出时按W-TinyLFU淘汰
+     *
+     * @param initialCapacity 初始容量
+     * @param expiryTime      单位毫秒
+     * @param maximumSize     最大数量
+     */
+    public ExpiryMap(int initialCapacity, long expiryTime, long maximumSize) {
+        this(initialCapacity, expiryTime, maximumSize, (k, v) -> 1);
+    }
+
+    /**
+     * 限制最大权重，超出时按W-TinyLFU淘汰
+     *
+     * @param initialCapacity 初始容量
+     * @param expiryTime      单位毫秒
+     * @param maximumWeight   最大权重，小于0表示不限制
+     * @param weigher         权重计算，不能返回负数
+     */
+    public ExpiryMap(int initialCapacity, long expiryTime, long maximumWeight, Weigher<? super K, ? super V> weigher) {
+        this(initialCapacity, expiryTime, maximumWeight, weigher, false);
+    }
+
+    /**
+     * @param initialCapacity   初始容量
+     * @param expiryTime        单位毫秒
+     * @param maximumWeight     最大权重，小于0表示不限制
+     * @param weigher           权重计算
+     * @param expireAfterAccess 读取时是否按条目的有效期顺延过期时间
+     */
+    public ExpiryMap(int initialCapacity, long expiryTime, long maximumWeight, Weigher<? super K, ? super V> weigher,
+                     boolean expireAfterAccess) {
         super(initialCapacity);
         if (expiryTime <= 0) {
             throw new RuntimeException();
         }
+        if (maximumWeight >= 0 && weigher == null) {
+            throw new IllegalArgumentException("weigher is required when maximumWeight is set");
+        }
+        this.policy = maximumWeight >= 0 ? new TinyLfuPolicy<>(maximumWeight, initialCapacity) : null;
+        this.weigher = weigher;
         this.expiry = expiryTime;
+        this.expireAfterAccess = expireAfterAccess;
         this.lock = new ReentrantLock();
-        scheduledExecutorService.scheduleAtFixedRate(new Runnable() {
-            @Override
-            public void run() {
-                clearExpiredCache();
-            }
-        }, 0, 30, TimeUnit.SECONDS);
+        this.maintenance = CacheMaintenanceScheduler.register(this, ExpiryMap::clearExpiredCache, 30, TimeUnit.SECONDS);
+    }
+
+    /**
+     * 读取时顺延过期时间的map，热点key不需要重复写入
+     *
+     * @param expiryTime 距离最后一次读写的有效期 毫秒
+     * @param <K>        key
+     * @param <V>        value
+     * @return {@link ExpiryMap}
+     */
+    public static <K, V> ExpiryMap<K, V> expireAfterAccess(long expiryTime) {
+        return new ExpiryMap<>(1 << 4, expiryTime, -1, null, true);
     }
 
     @Override
     public V put(K key, V value) {
-        lock.lock();
-        try {
-            expiryMap.put(key, System.currentTimeMillis() + this.expiry);
-            return super.put(key, value);
-        } finally {
-            lock.unlock();
-        }
+        return put(key, value, this.expiry);
     }
 
     @Override
     public boolean containsKey(Object key) {
-        lock.lock();
+        acquireLock();
         try {
             return !checkExpiry(key, true) && super.containsKey(key);
         } finally {
@@ -94,18 +193,22 @@ public class ExpiryMap<K, V> extends ConcurrentHashMap<K, V> {
      * @return value
      */
     public V put(K key, V value, long expiryTime) {
-        lock.lock();
+        CacheMetrics m = metrics;
+        long start = m == null ? 0 : System.nanoTime();
+        acquireLock();
         try {
-            expiryMap.put(key, System.currentTimeMillis() + expiryTime);
-            return super.put(key, value);
+            return write(key, value, System.currentTimeMillis(), expiryTime);
         } finally {
             lock.unlock();
+            if (m != null) {
+                m.recordPut(System.nanoTime() - start);
+            }
         }
     }
 
     @Override
     public int size() {
-        lock.lock();
+        acquireLock();
         try {
             return super.size();
         } finally {
@@ -115,7 +218,7 @@ public class ExpiryMap<K, V> extends ConcurrentHashMap<K, V> {
 
     @Override
     public boolean isEmpty() {
-        lock.lock();
+        acquireLock();
         try {
             return size() == 0;
         } finally {
@@ -128,7 +231,7 @@ public class ExpiryMap<K, V> extends ConcurrentHashMap<K, V> {
         if (value == null) {
             return Boolean.FALSE;
         }
-        lock.lock();
+        acquireLock();
         try {
             Set<Entry<K, V>> set = super.entrySet();
             if (set == null) {
@@ -140,6 +243,8 @@ public class ExpiryMap<K, V> extends ConcurrentHashMap<K, V> {
                 if (value.equals(entry.getValue())) {
                     if (checkExpiry(entry.getKey(), false)) {
                         iterator.remove();
+                        onRemoval(entry.getKey());
+                        recordExpired();
                         return Boolean.FALSE;
                     }
                     return Boolean.TRUE;
@@ -153,7 +258,7 @@ public class ExpiryMap<K, V> extends ConcurrentHashMap<K, V> {
 
     @Override
     public Collection<V> values() {
-        lock.lock();
+        acquireLock();
         try {
             clearExpiredCache();
             return super.values();
@@ -163,18 +268,44 @@ public class ExpiryMap<K, V> extends ConcurrentHashMap<K, V> {
     }
 
     @Override
+    @SuppressWarnings("unchecked")
     public V get(Object key) {
         if (key == null) {
             return null;
         }
-        lock.lock();
+        HotKeyTracker<K> tracker = hotKeyTracker;
+        if (tracker != null) {
+            tracker.record((K) key);
+        }
+        CacheMetrics m = metrics;
+        long start = m == null ? 0 : System.nanoTime();
+        acquireLock();
         try {
-            if (checkExpiry(key, true)) {
-                return null;
+            V value = checkExpiry(key, true) ? null : super.get(key);
+            if (value == null) {
+                missCount.increment();
+            } else {
+                hitCount.increment();
             }
-            return super.get(key);
+            if (m != null) {
+                if (value == null) {
+                    m.recordMiss();
+                } else {
+                    m.recordHit();
+                }
+            }
+            if (value != null) {
+                touch(key);
+            }
+            if (policy != null) {
+                policy.recordAccess((K) key);
+            }
+            return value;
         } finally {
             lock.unlock();
+            if (m != null) {
+                m.recordGet(System.nanoTime() - start);
+            }
         }
     }
 
@@ -183,16 +314,18 @@ public class ExpiryMap<K, V> extends ConcurrentHashMap<K, V> {
         if (key == null) {
             return null;
         }
-        lock.lock();
+        acquireLock();
         try {
-            if (!expiryMap.containsKey(key)) {
+            TimingWheel.Node<K> node = expiryMap.get(key);
+            if (node == null) {
                 return null;
             }
-            long expiryTime = expiryMap.get(key);
-            boolean flag = System.currentTimeMillis() > expiryTime;
-            if (flag) {
+            if (node.isExpired(System.currentTimeMillis())) {
                 super.remove(key);
                 expiryMap.remove(key);
+                timingWheel.deschedule(node);
+                onRemoval(key);
+                recordExpired();
                 return -1;
             }
             return super.get(key);
@@ -203,46 +336,297 @@ public class ExpiryMap<K, V> extends ConcurrentHashMap<K, V> {
 
     @Override
     public void putAll(Map<? extends K, ? extends V> m) {
-        lock.lock();
+        putAll(m, this.expiry);
+    }
+
+    /**
+     * 批量写入，整批只加一次锁
+     *
+     * @param m          数据
+     * @param expiryTime 有效期 毫秒
+     */
+    public void putAll(Map<? extends K, ? extends V> m, long expiryTime) {
+        acquireLock();
         try {
-            long expiryTime = System.currentTimeMillis() + this.expiry;
+            long now = System.currentTimeMillis();
             for (Entry<? extends K, ? extends V> e : m.entrySet()) {
-                expiryMap.put(e.getKey(), expiryTime);
+                write(e.getKey(), e.getValue(), now, expiryTime);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 批量读取，整批只加一次锁
+     *
+     * @param keys keys
+     * @return 未过期的key和value，不包含不存在的key
+     */
+    public Map<K, V> getAll(Iterable<? extends K> keys) {
+        Map<K, V> result = new HashMap<>();
+        CacheMetrics m = metrics;
+        acquireLock();
+        try {
+            for (K key : keys) {
+                V value = liveValue(key);
+                if (value == null) {
+                    missCount.increment();
+                } else {
+                    hitCount.increment();
+                    touch(key);
+                    result.put(key, value);
+                }
+                if (m != null) {
+                    if (value == null) {
+                        m.recordMiss();
+                    } else {
+                        m.recordHit();
+                    }
+                }
+                if (policy != null) {
+                    policy.recordAccess(key);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        return result;
+    }
+
+    /**
+     * 批量删除，整批只加一次锁
+     *
+     * @param keys keys
+     * @return 删除的未过期key数量
+     */
+    public int removeAll(Iterable<?> keys) {
+        int removed = 0;
+        acquireLock();
+        try {
+            for (Object key : keys) {
+                if (key != null && removeEntry(key) != null) {
+                    removed++;
+                }
             }
-            super.putAll(m);
         } finally {
             lock.unlock();
         }
+        return removed;
     }
 
     @Override
-    public Set<Entry<K, V>> entrySet() {
-        lock.lock();
+    public V putIfAbsent(K key, V value) {
+        return putIfAbsent(key, value, this.expiry);
+    }
+
+    /**
+     * key不存在或已过期时写入
+     *
+     * @param key        key
+     * @param value      value
+     * @param expiryTime 有效期 毫秒
+     * @return 已存在的value，写入时返回null
+     */
+    public V putIfAbsent(K key, V value, long expiryTime) {
+        acquireLock();
         try {
-            Set<Entry<K, V>> set = super.entrySet();
-            if (set != null) {
-                set.removeIf(entry -> checkExpiry(entry.getKey(), false));
+            V old = liveValue(key);
+            if (old == null) {
+                write(key, value, System.currentTimeMillis(), expiryTime);
+            }
+            return old;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean remove(Object key, Object value) {
+        if (key == null || value == null) {
+            return false;
+        }
+        acquireLock();
+        try {
+            V old = liveValue(key);
+            if (!value.equals(old)) {
+                return false;
+            }
+            removeEntry(key);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public V replace(K key, V value) {
+        Objects.requireNonNull(value);
+        acquireLock();
+        try {
+            V old = liveValue(key);
+            if (old != null) {
+                write(key, value, System.currentTimeMillis(), this.expiry);
             }
-            return set;
+            return old;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean replace(K key, V oldValue, V newValue) {
+        Objects.requireNonNull(oldValue);
+        Objects.requireNonNull(newValue);
+        acquireLock();
+        try {
+            if (!oldValue.equals(liveValue(key))) {
+                return false;
+            }
+            write(key, newValue, System.currentTimeMillis(), this.expiry);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public V computeIfAbsent(K key, Function<? super K, ? extends V> mappingFunction) {
+        return computeIfAbsent(key, mappingFunction, this.expiry);
+    }
+
+    /**
+     * key不存在或已过期时计算并写入，同一个key的并发调用只计算一次
+     *
+     * @param key             key
+     * @param mappingFunction 计算value，返回null时不写入
+     * @param expiryTime      有效期 毫秒
+     * @return 当前value
+     */
+    public V computeIfAbsent(K key, Function<? super K, ? extends V> mappingFunction, long expiryTime) {
+        Objects.requireNonNull(mappingFunction);
+        acquireLock();
+        try {
+            V old = liveValue(key);
+            if (old != null) {
+                touch(key);
+                return old;
+            }
+            V value = mappingFunction.apply(key);
+            if (value != null) {
+                write(key, value, System.currentTimeMillis(), expiryTime);
+            }
+            return value;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public V computeIfPresent(K key, BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+        Objects.requireNonNull(remappingFunction);
+        acquireLock();
+        try {
+            V old = liveValue(key);
+            return old == null ? null : applyResult(key, old, remappingFunction.apply(key, old), this.expiry);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public V compute(K key, BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+        return compute(key, remappingFunction, this.expiry);
+    }
+
+    /**
+     * 按当前value(不存在或已过期时为null)计算新value，结果为null时删除
+     *
+     * @param key               key
+     * @param remappingFunction 计算新value
+     * @param expiryTime        写入时的有效期 毫秒
+     * @return 新value
+     */
+    public V compute(K key, BiFunction<? super K, ? super V, ? extends V> remappingFunction, long expiryTime) {
+        Objects.requireNonNull(remappingFunction);
+        acquireLock();
+        try {
+            V old = liveValue(key);
+            return applyResult(key, old, remappingFunction.apply(key, old), expiryTime);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public V merge(K key, V value, BiFunction<? super V, ? super V, ? extends V> remappingFunction) {
+        return merge(key, value, remappingFunction, this.expiry);
+    }
+
+    /**
+     * key不存在或已过期时写入value，否则写入合并结果，结果为null时删除
+     *
+     * @param key               key
+     * @param value             value
+     * @param remappingFunction 合并旧value和value
+     * @param expiryTime        写入时的有效期 毫秒
+     * @return 新value
+     */
+    public V merge(K key, V value, BiFunction<? super V, ? super V, ? extends V> remappingFunction, long expiryTime) {
+        Objects.requireNonNull(value);
+        Objects.requireNonNull(remappingFunction);
+        acquireLock();
+        try {
+            V old = liveValue(key);
+            return applyResult(key, old, old == null ? value : remappingFunction.apply(old, value), expiryTime);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Set<Entry<K, V>> entrySet() {
+        acquireLock();
+        try {
+            clearExpiredCache();
+            return super.entrySet();
         } finally {
             lock.unlock();
         }
     }
 
+    /**
+     * 遍历未过期的数据及其过期时间点，不加锁(弱一致)，供{@link CacheSnapshots}使用
+     *
+     * @param visitor 回调
+     * @throws IOException 回调写入失败
+     */
+    void forEachLive(CacheSnapshots.EntryVisitor<K, V> visitor) throws IOException {
+        long now = System.currentTimeMillis();
+        for (Entry<K, V> entry : super.entrySet()) {
+            TimingWheel.Node<K> node = expiryMap.get(entry.getKey());
+            if (node != null && !node.isExpired(now)) {
+                visitor.visit(entry.getKey(), entry.getValue(), node.getDeadline());
+            }
+        }
+    }
 
     private boolean checkExpiry(Object key, boolean isRemoveSuper) {
-        lock.lock();
+        acquireLock();
         try {
-            if (!expiryMap.containsKey(key)) {
+            TimingWheel.Node<K> node = expiryMap.get(key);
+            if (node == null) {
                 return Boolean.FALSE;
             }
-            long expiryTime = expiryMap.get(key);
-            boolean flag = System.currentTimeMillis() > expiryTime;
+            boolean flag = node.isExpired(System.currentTimeMillis());
             if (flag) {
                 if (isRemoveSuper) {
                     super.remove(key);
+                    onRemoval(key);
+                    recordExpired();
                 }
                 expiryMap.remove(key);
+                timingWheel.deschedule(node);
             }
             return flag;
         } finally {
@@ -250,19 +634,304 @@ public class ExpiryMap<K, V> extends ConcurrentHashMap<K, V> {
         }
     }
 
+    /**
+     * 设置key的过期时间，已存在的节点在时间轮中重新调度(调用方持有锁)
+     *
+     * @param key        key
+     * @param now        当前时间 毫秒
+     * @param expiryTime 有效期 毫秒
+     */
+    private void scheduleExpiry(K key, long now, long expiryTime) {
+        long deadline = expiryTime >= Long.MAX_VALUE - now ? Long.MAX_VALUE : now + expiryTime;
+        ExpiryNode<K> node = expiryMap.get(key);
+        if (node == null) {
+            node = new ExpiryNode<>(key, deadline, expiryTime);
+            expiryMap.put(key, node);
+        } else {
+            node.setDeadline(deadline);
+            node.expiryTime = expiryTime;
+        }
+        timingWheel.schedule(node);
+    }
+
+    /**
+     * 写入value并设置过期时间(调用方持有锁)
+     *
+     * @return 旧value，已过期的旧value也会返回
+     */
+    private V write(K key, V value, long now, long expiryTime) {
+        Objects.requireNonNull(value);
+        // 先计算权重，非法权重不写入
+        int weight = weightOf(key, value);
+        scheduleExpiry(key, now, expiryTime);
+        V old = super.put(key, value);
+        afterWrite(key, weight);
+        return old;
+    }
+
+    /**
+     * 未过期的value，已过期时移除(调用方持有锁)
+     */
+    private V liveValue(Object key) {
+        return checkExpiry(key, true) ? null : super.get(key);
+    }
+
+    /**
+     * 写入compute/merge的结果，结果为null时删除(调用方持有锁)
+     */
+    private V applyResult(K key, V old, V value, long expiryTime) {
+        if (value == null) {
+            if (old != null) {
+                removeEntry(key);
+            }
+        } else {
+            write(key, value, System.currentTimeMillis(), expiryTime);
+        }
+        return value;
+    }
+
+    /**
+     * 删除key及其过期时间(调用方持有锁)
+     *
+     * @return 未过期的旧value
+     */
+    private V removeEntry(Object key) {
+        ExpiryNode<K> node = expiryMap.remove(key);
+        boolean expired = node != null && node.isExpired(System.currentTimeMillis());
+        if (node != null) {
+            timingWheel.deschedule(node);
+        }
+        V old = super.remove(key);
+        onRemoval(key);
+        return expired ? null : old;
+    }
+
+    /**
+     * 读取后顺延过期时间，未开启{@link ExpiryMap#expireAfterAccess}时不处理(调用方持有锁)
+     */
+    private void touch(Object key) {
+        if (!expireAfterAccess) {
+            return;
+        }
+        ExpiryNode<K> node = expiryMap.get(key);
+        if (node != null) {
+            long now = System.currentTimeMillis();
+            node.setDeadline(node.expiryTime >= Long.MAX_VALUE - now ? Long.MAX_VALUE : now + node.expiryTime);
+            timingWheel.schedule(node);
+        }
+    }
+
+    /**
+     * 时间轮回调，移除到期的key(调用方持有锁)
+     *
+     * @param node 到期节点
+     */
+    private boolean expire(TimingWheel.Node<K> node) {
+        if (expiryMap.remove(node.getKey(), node)) {
+            super.remove(node.getKey());
+            onRemoval(node.getKey());
+            recordExpired();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 获取锁，开启指标时记录未能立即获得锁的等待时间
+     */
+    private void acquireLock() {
+        CacheMetrics m = metrics;
+        if (m == null) {
+            lock.lock();
+            return;
+        }
+        if (!lock.tryLock()) {
+            long start = System.nanoTime();
+            lock.lock();
+            m.recordLockWait(System.nanoTime() - start);
+        }
+    }
+
+    private void recordExpired() {
+        CacheMetrics m = metrics;
+        if (m != null) {
+            m.recordRemoval(RemovalCause.EXPIRED);
+        }
+    }
+
+    private int weightOf(K key, V value) {
+        if (policy == null) {
+            return 0;
+        }
+        int weight = weigher.weigh(key, value);
+        if (weight < 0) {
+            throw new IllegalArgumentException("weight must not be negative: " + weight);
+        }
+        return weight;
+    }
+
+    /**
+     * 写入后更新淘汰策略，超出容量时淘汰(调用方持有锁)
+     *
+     * @param key    key
+     * @param weight 权重
+     */
+    private void afterWrite(K key, int weight) {
+        if (policy == null) {
+            return;
+        }
+        List<K> victims = policy.recordWrite(key, weight);
+        for (K victim : victims) {
+            TimingWheel.Node<K> node = expiryMap.remove(victim);
+            if (node != null) {
+                timingWheel.deschedule(node);
+            }
+            super.remove(victim);
+            evictionCount.increment();
+            CacheMetrics m = metrics;
+            if (m != null) {
+                m.recordRemoval(RemovalCause.SIZE);
+            }
+        }
+    }
+
+    /**
+     * key被移除后同步淘汰策略(调用方持有锁)
+     *
+     * @param key key
+     */
+    private void onRemoval(Object key) {
+        if (policy != null) {
+            policy.remove(key);
+        }
+    }
+
+    @Override
+    public V remove(Object key) {
+        if (key == null) {
+            return null;
+        }
+        acquireLock();
+        try {
+            return removeEntry(key);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void clear() {
+        acquireLock();
+        try {
+            super.clear();
+            expiryMap.clear();
+            timingWheel.clear();
+            if (policy != null) {
+                policy.clear();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 命中率等统计
+     * <br>
+     * {@link CacheStats#hitCount()}、{@link CacheStats#missCount()}来自{@link ExpiryMap#get(Object)}，
+     * {@link CacheStats#evictionCount()}为超出容量被淘汰的数量
+     *
+     * @return {@link CacheStats}
+     */
+    public CacheStats stats() {
+        return new CacheStats(hitCount.sum(), missCount.sum(), 0, 0, 0, evictionCount.sum());
+    }
+
     /**
      * 清除过期缓存
+     * <br>
+     * 只推进时间轮处理到期的key，开销与过期数量成正比
      */
     public void clearExpiredCache() {
-        lock.lock();
+        CacheMetrics m = metrics;
+        acquireLock();
         try {
-            Collection<V> values = super.values();
-            if (values == null || values.size() == 0) {
+            if (m == null) {
+                timingWheel.advance(System.currentTimeMillis(), this::expire);
                 return;
             }
-            values.removeIf(next -> !containsValue(next));
+            long start = System.nanoTime();
+            long[] expired = new long[1];
+            timingWheel.advance(System.currentTimeMillis(), node -> {
+                if (expire(node)) {
+                    expired[0]++;
+                }
+            });
+            m.recordSweep(System.nanoTime() - start, expired[0]);
         } finally {
             lock.unlock();
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * 开启热点key统计，每次{@link ExpiryMap#get(Object)}额外记录一次访问；未开启时只多一次null判断
+     *
+     * @param topK        统计的热点key数量
+     * @param decayPeriod 计数减半周期
+     * @param unit        周期单位
+     */
+    public synchronized void enableHotKeyTracking(int topK, long decayPeriod, TimeUnit unit) {
+        if (hotKeyTracker == null) {
+            hotKeyTracker = new HotKeyTracker<>(topK, decayPeriod, unit);
+        }
+    }
+
+    /**
+     * 当前热点key，按估算访问次数降序
+     *
+     * @return 未开启统计时返回空列表
+     */
+    public List<HotKeyTracker.HotKey<K>> hotKeys() {
+        HotKeyTracker<K> tracker = hotKeyTracker;
+        return tracker == null ? Collections.emptyList() : tracker.snapshot();
+    }
+
+    /**
+     * 开启{@link CacheMetrics}，通过{@link ExpiryMap#metrics()}读取
+     */
+    public synchronized void enableMetrics() {
+        if (metrics == null) {
+            metrics = new CacheMetrics();
+        }
+    }
+
+    /**
+     * @return 运行指标，未开启时为空
+     */
+    public Optional<CacheMetrics> metrics() {
+        return Optional.ofNullable(metrics);
+    }
+
+    /**
+     * 停止定时清理，已过期的key仍会在访问时移除
+     */
+    @Override
+    public void close() {
+        maintenance.close();
+        HotKeyTracker<K> tracker = hotKeyTracker;
+        if (tracker != null) {
+            tracker.close();
+        }
+    }
+
+    /**
+     * 记录条目自己的有效期，用于读取时顺延
+     */
+    private static final class ExpiryNode<K> extends TimingWheel.Node<K> {
+        private long expiryTime;
+
+        private ExpiryNode(K key, long deadline, long expiryTime) {
+            super(key, deadline);
+            this.expiryTime = expiryTime;
+        }
+    }
+}
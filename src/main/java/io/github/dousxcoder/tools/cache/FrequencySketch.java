@@ -0,0 +1,126 @@
+package io.github.dousxcoder.tools.cache;
+
+/**
+ * 4位计数的Count-Min Sketch(非线程安全，由调用方加锁)
+ * <br>
+ * 用于估算key的访问频率，每个key分布在4个计数器上，取最小值作为估算结果。
+ * 累计访问次数达到采样上限后所有计数减半，使频率随时间衰减。
+ * 计数表按key数量分配，key数量增长时通过{@link FrequencySketch#ensureCapacity(long)}扩容(已有计数清零)。
+ *
+ * @author dousx
+ */
+final class FrequencySketch<K> {
+
+    private static final long[] SEED = {
+            0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+    private static final long RESET_MASK = 0x7777777777777777L;
+    private static final long ONE_MASK = 0x1111111111111111L;
+
+    /**
+     * 每个long存放16个4位计数器
+     */
+    private long[] table = new long[0];
+    private int tableMask;
+
+    /**
+     * 衰减前累计的最大计数次数
+     */
+    private int sampleSize;
+    private int size;
+
+    /**
+     * @param expectedSize 预计的key数量
+     */
+    FrequencySketch(long expectedSize) {
+        ensureCapacity(expectedSize);
+    }
+
+    /**
+     * 计数表小于key数量时扩容到不小于key数量的2的幂，已有计数清零
+     *
+     * @param maximumSize key数量
+     */
+    void ensureCapacity(long maximumSize) {
+        int maximum = (int) Math.min(Math.max(maximumSize, 8), 1 << 30);
+        if (table.length >= maximum) {
+            return;
+        }
+        this.table = new long[ceilingPowerOfTwo(maximum)];
+        this.tableMask = table.length - 1;
+        this.sampleSize = (int) Math.min(10L * maximum, Integer.MAX_VALUE);
+        this.size = 0;
+    }
+
+    /**
+     * 估算访问频率
+     *
+     * @param key key
+     * @return 频率(0-15)
+     */
+    int frequency(K key) {
+        int hash = spread(key.hashCode());
+        int start = (hash & 3) << 2;
+        int frequency = Integer.MAX_VALUE;
+        for (int i = 0; i < 4; i++) {
+            int index = indexOf(hash, i);
+            int count = (int) ((table[index] >>> ((start + i) << 2)) & 0xfL);
+            frequency = Math.min(frequency, count);
+        }
+        return frequency;
+    }
+
+    /**
+     * 访问频率加一
+     *
+     * @param key key
+     */
+    void increment(K key) {
+        int hash = spread(key.hashCode());
+        int start = (hash & 3) << 2;
+        boolean added = false;
+        for (int i = 0; i < 4; i++) {
+            added |= incrementAt(indexOf(hash, i), start + i);
+        }
+        if (added && ++size >= sampleSize) {
+            reset();
+        }
+    }
+
+    private boolean incrementAt(int i, int j) {
+        int offset = j << 2;
+        long mask = 0xfL << offset;
+        if ((table[i] & mask) != mask) {
+            table[i] += 1L << offset;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 所有计数减半
+     */
+    private void reset() {
+        int count = 0;
+        for (int i = 0; i < table.length; i++) {
+            count += Long.bitCount(table[i] & ONE_MASK);
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+        size = (size - (count >>> 2)) >>> 1;
+    }
+
+    private int indexOf(int item, int i) {
+        long hash = (item + SEED[i]) * SEED[i];
+        hash += (hash >>> 32);
+        return ((int) hash) & tableMask;
+    }
+
+    private static int spread(int x) {
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        return (x >>> 16) ^ x;
+    }
+
+    private static int ceilingPowerOfTwo(int x) {
+        return 1 << -Integer.numberOfLeadingZeros(x - 1);
+    }
+}
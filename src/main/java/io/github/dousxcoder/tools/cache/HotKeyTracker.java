@@ -0,0 +1,225 @@
+package io.github.dousxcoder.tools.cache;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 热点key统计
+ * <br>
+ * <ul>
+ *     <li>Count-Min Sketch估算每个key的访问次数，计数器为普通int数组，并发下可能丢失少量计数(近似统计，不加锁)</li>
+ *     <li>估算次数每增加16且超过当前top-K最小值时才尝试进入top-K小顶堆，抢不到锁时直接放弃本次更新，不阻塞访问线程；
+ *     访问次数少于16的key不会出现在统计结果中</li>
+ *     <li>定时把所有计数减半，旧的热点会逐渐让位给新的热点</li>
+ * </ul>
+ *
+ * @author dousx
+ */
+public final class HotKeyTracker<K> implements AutoCloseable {
+
+    /**
+     * 每个key的4个计数器位于同一个32个int(128字节，两个相邻缓存行)的块中，
+     * 第i个计数器在块内第i组的8个int中选择，与同块其他key的计数器全部重合的概率为1/4096
+     */
+    private static final int DEPTH = 4;
+    private static final int LANES = 8;
+    private static final int BLOCK = DEPTH * LANES;
+
+    /**
+     * 估算次数每增加16才尝试更新一次top-K，热点key不会每次访问都去抢锁
+     */
+    private static final int OFFER_MASK = 15;
+
+    private final int[] table;
+    private final int blockMask;
+    private final int capacity;
+
+    /**
+     * 以下字段由{@link HotKeyTracker#lock}保护
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Map<K, HotKey<K>> index = new HashMap<>();
+    private final PriorityQueue<HotKey<K>> heap = new PriorityQueue<>(Comparator.comparingLong(HotKey::getCount));
+
+    /**
+     * top-K已满时的最小次数，未满时为0
+     */
+    private volatile long threshold;
+
+    private final CacheMaintenanceScheduler.Registration decay;
+
+    /**
+     * @param capacity    统计的热点key数量(K)
+     * @param decayPeriod 计数减半周期
+     * @param unit        周期单位
+     */
+    public HotKeyTracker(int capacity, long decayPeriod, TimeUnit unit) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        int blocks = Math.min(1 << 16, Math.max(1024, Integer.highestOneBit(capacity * 128 - 1) << 1));
+        this.table = new int[blocks * BLOCK];
+        this.blockMask = blocks - 1;
+        this.decay = CacheMaintenanceScheduler.register(this, HotKeyTracker::decay, decayPeriod, unit);
+    }
+
+    /**
+     * 记录一次访问
+     *
+     * @param key key
+     */
+    public void record(K key) {
+        if (key == null) {
+            return;
+        }
+        int hash = spread(key.hashCode());
+        int block = (hash & blockMask) * BLOCK;
+        // 块内位置使用与块号无关的哈希
+        int lanes = spread(hash + 0x9E3779B9);
+        int estimate = Integer.MAX_VALUE;
+        for (int i = 0; i < DEPTH; i++) {
+            int index = block + i * LANES + ((lanes >>> (i << 3)) & (LANES - 1));
+            int count = table[index];
+            if (count != Integer.MAX_VALUE) {
+                table[index] = ++count;
+            }
+            estimate = Math.min(estimate, count);
+        }
+        if ((estimate & OFFER_MASK) == 0 && estimate > threshold && lock.tryLock()) {
+            try {
+                offer(key, estimate);
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * 当前热点key，按估算次数降序
+     *
+     * @return 快照
+     */
+    public List<HotKey<K>> snapshot() {
+        List<HotKey<K>> result;
+        lock.lock();
+        try {
+            result = new ArrayList<>(heap.size());
+            for (HotKey<K> hotKey : heap) {
+                result.add(new HotKey<>(hotKey.key, hotKey.count));
+            }
+        } finally {
+            lock.unlock();
+        }
+        result.sort(Comparator.comparingLong(HotKey<K>::getCount).reversed());
+        return result;
+    }
+
+    /**
+     * 清空统计
+     */
+    public void reset() {
+        lock.lock();
+        try {
+            Arrays.fill(table, 0);
+            index.clear();
+            heap.clear();
+            threshold = 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 停止定时衰减
+     */
+    @Override
+    public void close() {
+        decay.close();
+    }
+
+    private void offer(K key, long count) {
+        HotKey<K> existing = index.get(key);
+        if (existing != null) {
+            heap.remove(existing);
+            existing.count = count;
+            heap.add(existing);
+        } else if (heap.size() < capacity) {
+            HotKey<K> hotKey = new HotKey<>(key, count);
+            index.put(key, hotKey);
+            heap.add(hotKey);
+        } else if (count > heap.peek().count) {
+            index.remove(heap.poll().key);
+            HotKey<K> hotKey = new HotKey<>(key, count);
+            index.put(key, hotKey);
+            heap.add(hotKey);
+        }
+        threshold = heap.size() < capacity ? 0 : heap.peek().count;
+    }
+
+    /**
+     * 所有计数减半
+     */
+    private void decay() {
+        lock.lock();
+        try {
+            for (int i = 0; i < table.length; i++) {
+                table[i] >>>= 1;
+            }
+            List<HotKey<K>> hotKeys = new ArrayList<>(heap);
+            heap.clear();
+            index.clear();
+            for (HotKey<K> hotKey : hotKeys) {
+                hotKey.count >>>= 1;
+                if (hotKey.count > 0) {
+                    index.put(hotKey.key, hotKey);
+                    heap.add(hotKey);
+                }
+            }
+            threshold = heap.size() < capacity ? 0 : heap.peek().count;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static int spread(int x) {
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        return (x >>> 16) ^ x;
+    }
+
+    /**
+     * 热点key及估算的访问次数(衰减后)
+     *
+     * @param <K> key
+     */
+    public static final class HotKey<K> {
+        private final K key;
+        private long count;
+
+        private HotKey(K key, long count) {
+            this.key = key;
+            this.count = count;
+        }
+
+        public K getKey() {
+            return key;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        @Override
+        public String toString() {
+            return key + "=" + count;
+        }
+    }
+}
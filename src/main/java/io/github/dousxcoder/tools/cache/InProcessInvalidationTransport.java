@@ -0,0 +1,46 @@
+package io.github.dousxcoder.tools.cache;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * 进程内传输，同一个实例上的所有订阅者都会收到消息(在发送线程中同步回调)
+ * <br>
+ * 用于单进程多个缓存实例之间同步，或测试
+ *
+ * @author dousx
+ */
+public class InProcessInvalidationTransport implements InvalidationTransport {
+
+    private static final int MAX_MESSAGE_SIZE = 64 << 10;
+
+    private final List<Consumer<byte[]>> receivers = new CopyOnWriteArrayList<>();
+    private volatile boolean closed;
+
+    @Override
+    public int maxMessageSize() {
+        return MAX_MESSAGE_SIZE;
+    }
+
+    @Override
+    public void send(byte[] message) {
+        if (closed) {
+            return;
+        }
+        for (Consumer<byte[]> receiver : receivers) {
+            receiver.accept(message);
+        }
+    }
+
+    @Override
+    public void subscribe(Consumer<byte[]> receiver) {
+        receivers.add(receiver);
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        receivers.clear();
+    }
+}
@@ -0,0 +1,348 @@
+package io.github.dousxcoder.tools.cache;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * int类型key的带有效期map
+ * <br>
+ * key、过期时间分别存放在原始类型数组中(开放寻址、线性探测)，get/put全程没有装箱，
+ * 每个key不再需要{@link Integer}对象和两个哈希节点，适合百万级以上的ID缓存。
+ * <ul>
+ *     <li>按key哈希分段，每段一把{@link StampedLock}，读操作走乐观读不加锁</li>
+ *     <li>读取时顺带判断是否过期，过期数据由定时任务按段清理</li>
+ *     <li>{@link IntExpiryMap#size()}可能包含尚未清理的过期数据</li>
+ * </ul>
+ *
+ * @author dousx
+ * @see IntExpiryMap
+ */
+public class IntExpiryMap<V> implements AutoCloseable {
+
+    /**
+     * 过期时间为0表示空槽
+     */
+    private static final long FREE = 0L;
+
+    /**
+     * 用于定时清除已过期缓存
+     */
+    private final CacheMaintenanceScheduler.Registration maintenance;
+
+    private final Segment<V>[] segments;
+    private final int segmentShift;
+
+    /**
+     * 默认有效期 毫秒
+     */
+    private final long expiry;
+
+    /**
+     * @param expiryTime 单位毫秒（不可小于0）
+     */
+    public IntExpiryMap(long expiryTime) {
+        this(1 << 4, expiryTime);
+    }
+
+    /**
+     * @param initialCapacity 初始容量
+     * @param expiryTime      单位毫秒（不可小于0）
+     */
+    @SuppressWarnings("unchecked")
+    public IntExpiryMap(int initialCapacity, long expiryTime) {
+        if (expiryTime <= 0) {
+            throw new IllegalArgumentException("expiryTime must be positive: " + expiryTime);
+        }
+        this.expiry = expiryTime;
+        int segmentCount = ceilingPowerOfTwo(Math.max(1, Runtime.getRuntime().availableProcessors()) * 2);
+        this.segmentShift = 32 - Integer.numberOfTrailingZeros(segmentCount);
+        this.segments = (Segment<V>[]) new Segment<?>[segmentCount];
+        int segmentCapacity = Math.max(Segment.MIN_CAPACITY, initialCapacity / segmentCount);
+        for (int i = 0; i < segmentCount; i++) {
+            segments[i] = new Segment<>(segmentCapacity);
+        }
+        this.maintenance = CacheMaintenanceScheduler.register(this, IntExpiryMap::clearExpiredCache, 30, TimeUnit.SECONDS);
+    }
+
+    /**
+     * @param key key
+     * @return 未过期的value，不存在时返回null
+     */
+    public V get(int key) {
+        int hash = hash(key);
+        Segment<V> segment = segmentFor(hash);
+        long now = System.currentTimeMillis();
+        long stamp = segment.tryOptimisticRead();
+        V value = segment.find(key, hash, now);
+        if (!segment.validate(stamp)) {
+            stamp = segment.readLock();
+            try {
+                value = segment.find(key, hash, now);
+            } finally {
+                segment.unlockRead(stamp);
+            }
+        }
+        return value;
+    }
+
+    public boolean containsKey(int key) {
+        return get(key) != null;
+    }
+
+    /**
+     * @param key   key
+     * @param value value
+     * @return 之前未过期的value
+     */
+    public V put(int key, V value) {
+        return put(key, value, this.expiry);
+    }
+
+    /**
+     * @param key        key
+     * @param value      value
+     * @param expiryTime 键值对有效期 毫秒
+     * @return 之前未过期的value
+     */
+    public V put(int key, V value, long expiryTime) {
+        if (value == null) {
+            throw new NullPointerException();
+        }
+        int hash = hash(key);
+        Segment<V> segment = segmentFor(hash);
+        long now = System.currentTimeMillis();
+        long stamp = segment.writeLock();
+        try {
+            return segment.put(key, hash, value, now + expiryTime, now);
+        } finally {
+            segment.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * @param key key
+     * @return 之前未过期的value
+     */
+    public V remove(int key) {
+        int hash = hash(key);
+        Segment<V> segment = segmentFor(hash);
+        long stamp = segment.writeLock();
+        try {
+            return segment.remove(key, hash, System.currentTimeMillis());
+        } finally {
+            segment.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * 数量(可能包含尚未清理的过期数据)
+     *
+     * @return 数量
+     */
+    public int size() {
+        long size = 0;
+        for (Segment<V> segment : segments) {
+            size += segment.size;
+        }
+        return (int) Math.min(size, Integer.MAX_VALUE);
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public void clear() {
+        for (Segment<V> segment : segments) {
+            long stamp = segment.writeLock();
+            try {
+                segment.clear();
+            } finally {
+                segment.unlockWrite(stamp);
+            }
+        }
+    }
+
+    /**
+     * 清除过期缓存，逐段扫描原始类型数组
+     */
+    public void clearExpiredCache() {
+        long now = System.currentTimeMillis();
+        for (Segment<V> segment : segments) {
+            long stamp = segment.writeLock();
+            try {
+                segment.removeExpired(now);
+            } finally {
+                segment.unlockWrite(stamp);
+            }
+        }
+    }
+
+    /**
+     * 停止定时清理，已过期的key仍会在访问时判断
+     */
+    @Override
+    public void close() {
+        maintenance.close();
+    }
+
+    private Segment<V> segmentFor(int hash) {
+        return segments[segmentShift == 32 ? 0 : hash >>> segmentShift];
+    }
+
+    private static int hash(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private static int ceilingPowerOfTwo(int x) {
+        return x <= 1 ? 1 : 1 << -Integer.numberOfLeadingZeros(x - 1);
+    }
+
+    /**
+     * 分段，key/过期时间/value三个数组下标一一对应
+     */
+    private static final class Segment<V> extends StampedLock {
+        private static final long serialVersionUID = 1L;
+        private static final int MIN_CAPACITY = 16;
+
+        private Table table;
+        private volatile int size;
+
+        Segment(int initialCapacity) {
+            this.table = new Table(ceilingPowerOfTwo(Math.max(MIN_CAPACITY, initialCapacity * 4 / 3 + 1)));
+        }
+
+        @SuppressWarnings("unchecked")
+        V find(int key, int hash, long now) {
+            Table t = this.table;
+            int mask = t.keys.length - 1;
+            for (int i = hash & mask, probes = 0; probes <= mask; i = (i + 1) & mask, probes++) {
+                long deadline = t.deadlines[i];
+                if (deadline == FREE) {
+                    return null;
+                }
+                if (t.keys[i] == key) {
+                    return now > deadline ? null : (V) t.values[i];
+                }
+            }
+            return null;
+        }
+
+        @SuppressWarnings("unchecked")
+        V put(int key, int hash, V value, long deadline, long now) {
+            Table t = this.table;
+            int mask = t.keys.length - 1;
+            int i = hash & mask;
+            while (t.deadlines[i] != FREE) {
+                if (t.keys[i] == key) {
+                    V old = now > t.deadlines[i] ? null : (V) t.values[i];
+                    t.values[i] = value;
+                    t.deadlines[i] = deadline;
+                    return old;
+                }
+                i = (i + 1) & mask;
+            }
+            t.keys[i] = key;
+            t.values[i] = value;
+            t.deadlines[i] = deadline;
+            size = size + 1;
+            if (size > t.keys.length * 3 / 4) {
+                resize();
+            }
+            return null;
+        }
+
+        @SuppressWarnings("unchecked")
+        V remove(int key, int hash, long now) {
+            Table t = this.table;
+            int mask = t.keys.length - 1;
+            for (int i = hash & mask; t.deadlines[i] != FREE; i = (i + 1) & mask) {
+                if (t.keys[i] == key) {
+                    V old = now > t.deadlines[i] ? null : (V) t.values[i];
+                    delete(t, i);
+                    return old;
+                }
+            }
+            return null;
+        }
+
+        void removeExpired(long now) {
+            Table t = this.table;
+            int i = 0;
+            while (i < t.keys.length) {
+                long deadline = t.deadlines[i];
+                if (deadline != FREE && now > deadline) {
+                    // 后移删除会把后面的数据挪到当前位置，需要再检查一次
+                    delete(t, i);
+                } else {
+                    i++;
+                }
+            }
+        }
+
+        void clear() {
+            Table t = this.table;
+            Arrays.fill(t.deadlines, FREE);
+            Arrays.fill(t.values, null);
+            size = 0;
+        }
+
+        /**
+         * 线性探测的后移删除，不留墓碑
+         */
+        private void delete(Table t, int index) {
+            int mask = t.keys.length - 1;
+            int hole = index;
+            int i = index;
+            while (true) {
+                i = (i + 1) & mask;
+                if (t.deadlines[i] == FREE) {
+                    break;
+                }
+                int home = hash(t.keys[i]) & mask;
+                // home不在(hole, i]之间的数据可以挪到hole
+                if (((i - home) & mask) >= ((i - hole) & mask)) {
+                    t.keys[hole] = t.keys[i];
+                    t.deadlines[hole] = t.deadlines[i];
+                    t.values[hole] = t.values[i];
+                    hole = i;
+                }
+            }
+            t.deadlines[hole] = FREE;
+            t.values[hole] = null;
+            size = size - 1;
+        }
+
+        private void resize() {
+            Table old = this.table;
+            Table t = new Table(old.keys.length << 1);
+            int mask = t.keys.length - 1;
+            for (int j = 0; j < old.keys.length; j++) {
+                if (old.deadlines[j] == FREE) {
+                    continue;
+                }
+                int i = hash(old.keys[j]) & mask;
+                while (t.deadlines[i] != FREE) {
+                    i = (i + 1) & mask;
+                }
+                t.keys[i] = old.keys[j];
+                t.deadlines[i] = old.deadlines[j];
+                t.values[i] = old.values[j];
+            }
+            this.table = t;
+        }
+    }
+
+    private static final class Table {
+        final int[] keys;
+        final long[] deadlines;
+        final Object[] values;
+
+        Table(int capacity) {
+            this.keys = new int[capacity];
+            this.deadlines = new long[capacity];
+            this.values = new Object[capacity];
+        }
+    }
+}
@@ -0,0 +1,267 @@
+package io.github.dousxcoder.tools.cache;
+
+import cn.hutool.log.Log;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * 多节点缓存失效广播
+ * <br>
+ * <ul>
+ *     <li>{@link InvalidationBus#invalidate(Object)}立即失效本节点注册的缓存，key进入待发送队列，
+ *     由定时任务(或队列达到批次大小时)合并为一条消息通过{@link InvalidationTransport}发送</li>
+ *     <li>收到消息后在传输层的接收线程中按批次失效，Guava缓存的读操作不加锁，不会被阻塞</li>
+ *     <li>消息带有节点编号，忽略自己发出的消息</li>
+ * </ul>
+ * 消息格式：[魔数 int][类型 byte][节点编号 long][key数量 int][key长度 int][key]...
+ *
+ * @author dousx
+ */
+public class InvalidationBus<K> implements AutoCloseable {
+    private static final Log log = Log.get(InvalidationBus.class);
+
+    private static final int MAGIC = 0x43494E56;
+    private static final byte TYPE_KEYS = 1;
+    private static final byte TYPE_ALL = 2;
+    private static final int HEADER = 4 + 1 + 8 + 4;
+
+    private final InvalidationTransport transport;
+    private final CacheCodec<K> keyCodec;
+    private final int maxBatchKeys;
+    private final long nodeId = ThreadLocalRandom.current().nextLong();
+
+    private final List<Target<K>> targets = new CopyOnWriteArrayList<>();
+    private final ConcurrentLinkedQueue<K> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingCount = new AtomicInteger();
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final CacheMaintenanceScheduler.Registration flushTask;
+
+    private final LongAdder publishedKeys = new LongAdder();
+    private final LongAdder sentMessages = new LongAdder();
+    private final LongAdder receivedKeys = new LongAdder();
+    private final LongAdder sendFailures = new LongAdder();
+
+    /**
+     * 每10毫秒发送一次，每批最多1024个key
+     *
+     * @param transport 传输方式
+     * @param keyCodec  key序列化
+     */
+    public InvalidationBus(InvalidationTransport transport, CacheCodec<K> keyCodec) {
+        this(transport, keyCodec, 10, 1024);
+    }
+
+    /**
+     * @param transport       传输方式
+     * @param keyCodec        key序列化
+     * @param flushIntervalMs 发送间隔 毫秒
+     * @param maxBatchKeys    每批最多key数量，待发送数量达到该值时立即发送
+     */
+    public InvalidationBus(InvalidationTransport transport, CacheCodec<K> keyCodec, long flushIntervalMs, int maxBatchKeys) {
+        if (maxBatchKeys <= 0) {
+            throw new IllegalArgumentException("maxBatchKeys must be positive: " + maxBatchKeys);
+        }
+        this.transport = transport;
+        this.keyCodec = keyCodec;
+        this.maxBatchKeys = maxBatchKeys;
+        transport.subscribe(this::receive);
+        this.flushTask = CacheMaintenanceScheduler.register(this, InvalidationBus::flush, flushIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 注册需要同步失效的缓存
+     *
+     * @param cache 缓存
+     */
+    public void register(MemoryCache<K, ?> cache) {
+        register(cache::invalidateAll, cache::invalidateAll);
+    }
+
+    /**
+     * 注册需要同步失效的map
+     *
+     * @param map map
+     */
+    public void register(ExpiryMap<K, ?> map) {
+        register(keys -> keys.forEach(map::remove), map::clear);
+    }
+
+    /**
+     * @param onKeys  批量失效回调
+     * @param onClear 清空回调
+     */
+    public void register(Consumer<? super Collection<K>> onKeys, Runnable onClear) {
+        targets.add(new Target<>(onKeys, onClear));
+    }
+
+    /**
+     * 失效本节点的缓存并广播给其他节点
+     *
+     * @param key key
+     */
+    public void invalidate(K key) {
+        applyKeys(Collections.singletonList(key));
+        pending.add(key);
+        publishedKeys.increment();
+        if (pendingCount.incrementAndGet() >= maxBatchKeys) {
+            flush();
+        }
+    }
+
+    /**
+     * 清空本节点的缓存并立即广播
+     */
+    public void invalidateAll() {
+        targets.forEach(target -> target.onClear.run());
+        send(encode(TYPE_ALL, Collections.emptyList(), HEADER));
+    }
+
+    /**
+     * 发送待发送的key，其他线程正在发送时直接返回
+     */
+    public void flush() {
+        if (pendingCount.get() == 0 || !flushLock.tryLock()) {
+            return;
+        }
+        try {
+            int limit = transport.maxMessageSize();
+            List<byte[]> batch = new ArrayList<>();
+            int size = HEADER;
+            K key;
+            while ((key = pending.poll()) != null) {
+                pendingCount.decrementAndGet();
+                byte[] bytes = keyCodec.encode(key);
+                if (HEADER + 4 + bytes.length > limit) {
+                    log.warn("key序列化后超过单条消息上限,未广播,key {}", key);
+                    continue;
+                }
+                if (!batch.isEmpty() && (batch.size() >= maxBatchKeys || size + 4 + bytes.length > limit)) {
+                    send(encode(TYPE_KEYS, batch, size));
+                    batch = new ArrayList<>();
+                    size = HEADER;
+                }
+                batch.add(bytes);
+                size += 4 + bytes.length;
+            }
+            if (!batch.isEmpty()) {
+                send(encode(TYPE_KEYS, batch, size));
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * @return 广播的key数量
+     */
+    public long publishedKeyCount() {
+        return publishedKeys.sum();
+    }
+
+    /**
+     * @return 发送的消息数量
+     */
+    public long sentMessageCount() {
+        return sentMessages.sum();
+    }
+
+    /**
+     * @return 收到其他节点失效的key数量
+     */
+    public long receivedKeyCount() {
+        return receivedKeys.sum();
+    }
+
+    /**
+     * @return 发送失败的消息数量
+     */
+    public long sendFailureCount() {
+        return sendFailures.sum();
+    }
+
+    /**
+     * 发送剩余的key后停止定时发送；传输可能被多个实例共用，由调用方关闭
+     */
+    @Override
+    public void close() {
+        flushTask.close();
+        flush();
+    }
+
+    private void send(byte[] message) {
+        try {
+            transport.send(message);
+            sentMessages.increment();
+        } catch (IOException | RuntimeException e) {
+            // 失效消息丢失时由缓存有效期兜底
+            sendFailures.increment();
+            log.warn("发送失效消息失败", e);
+        }
+    }
+
+    private byte[] encode(byte type, List<byte[]> keys, int size) {
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.putInt(MAGIC).put(type).putLong(nodeId).putInt(keys.size());
+        for (byte[] key : keys) {
+            buffer.putInt(key.length).put(key);
+        }
+        return buffer.array();
+    }
+
+    private void receive(byte[] message) {
+        ByteBuffer buffer = ByteBuffer.wrap(message);
+        if (message.length < HEADER || buffer.getInt() != MAGIC) {
+            return;
+        }
+        byte type = buffer.get();
+        if (buffer.getLong() == nodeId) {
+            return;
+        }
+        if (type == TYPE_ALL) {
+            targets.forEach(target -> target.onClear.run());
+            return;
+        }
+        int count = buffer.getInt();
+        List<K> keys = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            byte[] bytes = new byte[buffer.getInt()];
+            buffer.get(bytes);
+            keys.add(keyCodec.decode(bytes));
+        }
+        receivedKeys.add(count);
+        applyKeys(keys);
+    }
+
+    private void applyKeys(Collection<K> keys) {
+        for (Target<K> target : targets) {
+            try {
+                target.onKeys.accept(keys);
+            } catch (RuntimeException e) {
+                log.warn("失效缓存异常,keys {}", keys, e);
+            }
+        }
+    }
+
+    private static final class Target<K> {
+        private final Consumer<? super Collection<K>> onKeys;
+        private final Runnable onClear;
+
+        private Target(Consumer<? super Collection<K>> onKeys, Runnable onClear) {
+            this.onKeys = onKeys;
+            this.onClear = onClear;
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package io.github.dousxcoder.tools.cache;
+
+import java.io.IOException;
+import java.util.function.Consumer;
+
+/**
+ * {@link InvalidationBus}的消息传输方式
+ * <br>
+ * 只负责把字节消息投递给其他节点，消息格式由{@link InvalidationBus}编解码；
+ * 允许丢消息和重复投递(失效操作幂等，丢失时由缓存有效期兜底)
+ *
+ * @author dousx
+ * @see InProcessInvalidationTransport
+ * @see UdpInvalidationTransport
+ */
+public interface InvalidationTransport extends AutoCloseable {
+
+    /**
+     * 单条消息最大字节数，{@link InvalidationBus}按此拆分批次
+     *
+     * @return 字节数
+     */
+    int maxMessageSize();
+
+    /**
+     * 发送消息(可能也会投递给自己)
+     *
+     * @param message 消息
+     * @throws IOException 发送失败
+     */
+    void send(byte[] message) throws IOException;
+
+    /**
+     * 订阅消息，回调在传输层的接收线程中执行
+     *
+     * @param receiver 回调
+     */
+    void subscribe(Consumer<byte[]> receiver);
+
+    /**
+     * 停止接收并释放资源
+     */
+    @Override
+    void close();
+}
@@ -0,0 +1,171 @@
+package io.github.dousxcoder.tools.cache;
+
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnel;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 存在的key集合的布隆过滤器(可扩容)，用于在缓存前快速判断一定不存在的key
+ * <br>
+ * <ul>
+ *     <li>由多级{@link BloomFilter}组成，当前级写满后新增一级，容量翻倍、误判率减半，总误判率不超过初始误判率的2倍</li>
+ *     <li>只能添加不能删除，后端删除的key仍会被判断为可能存在</li>
+ *     <li>{@link KeyBloomFilter#mightContain(Object)}无锁，只有扩容时加锁</li>
+ * </ul>
+ * 通过{@link MemoryCache.Builder#keyFilter(KeyBloomFilter)}使用时，缓存写入和加载成功的key会自动加入过滤器；
+ * 加载器返回null说明过滤器误判，计入{@link KeyBloomFilter#falsePositiveCount()}
+ *
+ * @author dousx
+ */
+public final class KeyBloomFilter<K> {
+
+    private static final double TIGHTENING_RATIO = 0.5;
+
+    private final Funnel<? super K> funnel;
+
+    /**
+     * 只追加，读取时不加锁
+     */
+    private volatile Stage<K>[] stages;
+
+    private final LongAdder definiteMissCount = new LongAdder();
+    private final LongAdder falsePositiveCount = new LongAdder();
+
+    /**
+     * @param funnel             key写入哈希的方式，如{@code Funnels.stringFunnel(StandardCharsets.UTF_8)}
+     * @param expectedInsertions 首级预计key数量
+     * @param fpp                首级误判率
+     */
+    @SuppressWarnings("unchecked")
+    public KeyBloomFilter(Funnel<? super K> funnel, long expectedInsertions, double fpp) {
+        if (expectedInsertions <= 0) {
+            throw new IllegalArgumentException("expectedInsertions must be positive: " + expectedInsertions);
+        }
+        if (fpp <= 0 || fpp >= 1) {
+            throw new IllegalArgumentException("fpp must be in (0, 1): " + fpp);
+        }
+        this.funnel = funnel;
+        this.stages = (Stage<K>[]) new Stage<?>[]{new Stage<>(funnel, expectedInsertions, fpp * (1 - TIGHTENING_RATIO))};
+    }
+
+    /**
+     * @param key key
+     * @return false表示一定不存在
+     */
+    public boolean mightContain(K key) {
+        for (Stage<K> stage : stages) {
+            if (stage.filter.mightContain(key)) {
+                return true;
+            }
+        }
+        definiteMissCount.increment();
+        return false;
+    }
+
+    /**
+     * 添加存在的key
+     *
+     * @param key key
+     */
+    public void put(K key) {
+        Stage<K>[] current = stages;
+        for (Stage<K> stage : current) {
+            if (stage.filter.mightContain(key)) {
+                return;
+            }
+        }
+        Stage<K> last = current[current.length - 1];
+        if (last.filter.put(key) && last.count.incrementAndGet() >= last.capacity) {
+            grow(last);
+        }
+    }
+
+    /**
+     * 批量添加存在的key(启动时用后端的key全集初始化)
+     *
+     * @param keys keys
+     */
+    public void putAll(Iterable<? extends K> keys) {
+        for (K key : keys) {
+            put(key);
+        }
+    }
+
+    /**
+     * 记录一次误判：过滤器判断可能存在，实际不存在
+     */
+    public void recordFalsePositive() {
+        falsePositiveCount.increment();
+    }
+
+    /**
+     * @return 判断为一定不存在的次数
+     */
+    public long definiteMissCount() {
+        return definiteMissCount.sum();
+    }
+
+    /**
+     * @return 记录的误判次数
+     */
+    public long falsePositiveCount() {
+        return falsePositiveCount.sum();
+    }
+
+    /**
+     * 实际不存在的key中被误判为可能存在的比例
+     *
+     * @return 误判率，没有数据时返回0
+     */
+    public double observedFalsePositiveRate() {
+        long falsePositives = falsePositiveCount.sum();
+        long total = falsePositives + definiteMissCount.sum();
+        return total == 0 ? 0 : (double) falsePositives / total;
+    }
+
+    /**
+     * 按当前写入量估算的误判率
+     *
+     * @return 各级误判率之和
+     */
+    public double expectedFalsePositiveRate() {
+        double fpp = 0;
+        for (Stage<K> stage : stages) {
+            fpp += stage.filter.expectedFpp();
+        }
+        return Math.min(1, fpp);
+    }
+
+    /**
+     * @return 级数
+     */
+    public int stageCount() {
+        return stages.length;
+    }
+
+    private synchronized void grow(Stage<K> full) {
+        Stage<K>[] current = stages;
+        if (current[current.length - 1] != full) {
+            return;
+        }
+        Stage<K>[] next = Arrays.copyOf(current, current.length + 1);
+        next[current.length] = new Stage<>(funnel, full.capacity * 2, full.fpp * TIGHTENING_RATIO);
+        stages = next;
+    }
+
+    private static final class Stage<K> {
+        private final BloomFilter<K> filter;
+        private final long capacity;
+        private final double fpp;
+        private final AtomicLong count = new AtomicLong();
+
+        private Stage(Funnel<? super K> funnel, long capacity, double fpp) {
+            this.filter = BloomFilter.create(funnel, capacity, fpp);
+            this.capacity = capacity;
+            this.fpp = fpp;
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package io.github.dousxcoder.tools.cache;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 耗时直方图(纳秒)
+ * <br>
+ * 按对数-线性划分桶(类似HdrHistogram)：每个2的幂区间再均分为8个子桶，相对误差不超过12.5%，
+ * 固定496个桶覆盖全部long范围，记录只有一次数组原子加，不分配对象
+ *
+ * @author dousx
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int BUCKETS = (64 - SUB_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * 记录一次耗时
+     *
+     * @param nanos 纳秒，小于0按0记录
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(indexOf(value));
+        count.increment();
+        sum.add(value);
+        if (value > max.get()) {
+            max.accumulateAndGet(value, Math::max);
+        }
+    }
+
+    /**
+     * @return 记录次数
+     */
+    public long count() {
+        return count.sum();
+    }
+
+    /**
+     * @return 耗时总和 纳秒
+     */
+    public long sum() {
+        return sum.sum();
+    }
+
+    /**
+     * @return 最大耗时 纳秒
+     */
+    public long max() {
+        return max.get();
+    }
+
+    /**
+     * @return 平均耗时 纳秒，没有记录时返回0
+     */
+    public double mean() {
+        long n = count.sum();
+        return n == 0 ? 0 : (double) sum.sum() / n;
+    }
+
+    /**
+     * 分位数(所在桶的上界，不超过最大值)
+     *
+     * @param quantile 0-1
+     * @return 耗时 纳秒，没有记录时返回0
+     */
+    public long percentile(double quantile) {
+        long total = 0;
+        long[] snapshot = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(Math.min(1, Math.max(0, quantile)) * total);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= Math.max(1, rank)) {
+                return Math.min(upperBound(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    static int indexOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    static long upperBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int exponent = index / SUB_BUCKETS + SUB_BITS - 1;
+        int sub = index % SUB_BUCKETS;
+        long width = 1L << (exponent - SUB_BITS);
+        long lower = (long) (SUB_BUCKETS + sub) << (exponent - SUB_BITS);
+        return lower + width - 1;
+    }
+}
@@ -0,0 +1,64 @@
+package io.github.dousxcoder.tools.cache;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 本地磁盘内存映射文件，每个内存块对应目录下一个段文件
+ * <br>
+ * 段文件只追加写入，整块回收后从头复用；关闭时删除所有段文件
+ *
+ * @author dousx
+ */
+class MappedFileSlabAllocator implements SlabAllocator {
+
+    private final Path directory;
+    private final List<FileChannel> channels = new ArrayList<>();
+    private final List<Path> files = new ArrayList<>();
+
+    /**
+     * @param parent 段文件所在目录的父目录，每个实例单独创建子目录
+     * @throws IOException 创建目录失败
+     */
+    MappedFileSlabAllocator(Path parent) throws IOException {
+        Files.createDirectories(parent);
+        this.directory = Files.createTempDirectory(parent, "cache-segments-");
+    }
+
+    @Override
+    public synchronized ByteBuffer allocate(int id, int capacity) throws IOException {
+        Path file = directory.resolve("segment-" + id + ".dat");
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        channels.add(channel);
+        files.add(file);
+        return channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        IOException failure = null;
+        for (FileChannel channel : channels) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+        for (Path file : files) {
+            Files.deleteIfExists(file);
+        }
+        Files.deleteIfExists(directory);
+        channels.clear();
+        files.clear();
+        if (failure != null) {
+            throw failure;
+        }
+    }
+}
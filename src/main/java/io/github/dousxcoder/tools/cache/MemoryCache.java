@@ -3,21 +3,49 @@ package io.github.dousxcoder.tools.cache;
 import cn.hutool.log.Log;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
 import com.google.common.cache.LoadingCache;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListenableFutureTask;
+import io.github.dousxcoder.tools.reflect.ObjectSizeEstimator;
 
+import java.io.IOException;
 import java.io.Serializable;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * 基于内存实现的过期时间Map(线程安全)
+ * <br>
+ * 读写直接访问Guava内部分段的并发缓存，不加全局锁；过期数据由共享维护线程定期清理，不占用请求线程
+ * <br>
+ * 通过{@link MemoryCache#builder()}指定{@link MemoryCacheLoader}后：
+ * <ul>
+ *     <li>同一个key并发未命中时只加载一次，其余线程等待同一个结果</li>
+ *     <li>可设置{@link Builder#refreshAfterWrite(long, TimeUnit)}，到期后在有界线程池中异步刷新，刷新期间返回旧值</li>
+ *     <li>加载结果为null时不缓存，{@link MemoryCache#get(Object)}返回null，内部不抛出异常</li>
+ * </ul>
+ * 通过{@link Builder#expireAfter(MemoryCacheExpiry)}或{@link MemoryCache#put(Object, Object, long, TimeUnit)}
+ * 可以为每个条目单独设置有效期，过期时间由{@link DeadlineQueue}调度，同一个实例可以混合不同的有效期
+ * <br>
+ * 内部的Guava缓存、加载器等字段不可序列化，重启预热请使用{@link CacheSnapshots}
+ * <br>
+ * 通过{@link Builder#recordMetrics()}开启{@link CacheMetrics}，记录get/put耗时分布、按原因的淘汰数量和过期清理耗时
  *
  * @author dousx
  */
-public class MemoryCache<K, V> implements Serializable {
+public class MemoryCache<K, V> implements Serializable, AutoCloseable {
     private static final Log log = Log.get(MemoryCache.class);
     private static final Long DURATION_DEFAULT_VALUE = 3600L;
     private static final Integer MAXIMUM_SIZE_DEFAULT_VALUE = 2048;
@@ -25,12 +53,7 @@ public class MemoryCache<K, V> implements Serializable {
     /**
      * 用于定时清除已过期缓存
      */
-    private final ScheduledExecutorService scheduledExecutorService = Executors.newSingleThreadScheduledExecutor();
-
-    /**
-     * 同步锁
-     */
-    private final Lock lock = new ReentrantLock();
+    private final transient CacheMaintenanceScheduler.Registration maintenance;
 
     /**
      * 缓存(线程安全)
@@ -55,6 +78,57 @@ public class MemoryCache<K, V> implements Serializable {
      */
     private TimeUnit unit;
 
+    /**
+     * 数据加载，为null时未命中直接返回null
+     */
+    private final transient MemoryCacheLoader<K, V> loader;
+
+    /**
+     * 是否由自定义{@link LoadingCache}自行加载(兼容自定义缓存的构造方法)
+     */
+    private final boolean delegateLoading;
+
+    /**
+     * 正在加载的key，用于合并并发加载
+     */
+    private final transient ConcurrentHashMap<K, CompletableFuture<V>> loading = new ConcurrentHashMap<>();
+
+    /**
+     * 按条目计算的过期策略，为null时只使用{@link MemoryCache#duration}
+     */
+    private final transient MemoryCacheExpiry<K, V> expiry;
+
+    /**
+     * 按条目的过期时间
+     */
+    private final transient ConcurrentHashMap<K, TimingWheel.Node<K>> deadlines = new ConcurrentHashMap<>();
+    private final transient DeadlineQueue<K> deadlineQueue = new DeadlineQueue<>();
+
+    /**
+     * 存在的key集合，为null时不过滤
+     */
+    private final transient KeyBloomFilter<K> keyFilter;
+
+    /**
+     * 运行指标，未开启时为null
+     */
+    private final transient CacheMetrics metrics;
+
+    /**
+     * 热点key统计，未开启时为null
+     */
+    private transient volatile HotKeyTracker<K> hotKeyTracker;
+
+    /**
+     * 是否存在按条目的过期时间
+     */
+    private transient volatile boolean variableExpiry;
+
+    /**
+     * 用于定时清除按条目过期的缓存
+     */
+    private transient CacheMaintenanceScheduler.Registration deadlineMaintenance;
+
 
     /**
      * 默认值,即当一个key超过3600秒没有访问时,会被清除
@@ -127,19 +201,24 @@ public class MemoryCache<K, V> implements Serializable {
      * @param unit        过期时间单位
      */
     private MemoryCache(Integer maximumSize, long duration, TimeUnit unit) {
-        this((LoadingCache<K, V>) CacheBuilder.newBuilder()
+        this(new EvictionHook<>(null, null), maximumSize, duration, unit);
+    }
+
+    private MemoryCache(EvictionHook<K, V> hook, Integer maximumSize, long duration, TimeUnit unit) {
+        this(CacheBuilder.newBuilder()
                 //缓存池大小，在缓存项接近该大小时， Guava开始回收旧的缓存项
                 .maximumSize(maximumSize)
                 //设置时间对象没有被读/写访问则对象从内存中删除(在另外的线程里面不定期维护)
                 .expireAfterAccess(duration, unit)
                 //开启Guava Cache的统计功能
                 .recordStats()
+                .removalListener(hook)
                 .build(new CacheLoader<K, V>() {
                     @Override
                     public V load(K k) {
                         return null;
                     }
-                }), maximumSize, duration, unit);
+                }), new Builder<K, V>().maximumSize(maximumSize).expireAfterAccess(duration, unit), null, false, null, hook);
     }
 
     /**
@@ -149,47 +228,254 @@ public class MemoryCache<K, V> implements Serializable {
      * @param unit        过期时间单位
      */
     private MemoryCache(LoadingCache<K, V> cache, Integer maximumSize, long duration, TimeUnit unit) {
+        this(cache, new Builder<K, V>().maximumSize(maximumSize).expireAfterAccess(duration, unit), null, true, null, null);
+    }
+
+    /**
+     * @param cache           缓存
+     * @param builder         配置
+     * @param loader          数据加载
+     * @param delegateLoading 是否由cache自行加载
+     * @param metrics         运行指标，可以为null
+     * @param hook            cache的移除回调，可以为null(自定义缓存)
+     */
+    private MemoryCache(LoadingCache<K, V> cache, Builder<K, V> builder, MemoryCacheLoader<K, V> loader, boolean delegateLoading,
+                        CacheMetrics metrics, EvictionHook<K, V> hook) {
         this.cache = cache;
-        this.maximumSize = maximumSize;
-        this.duration = duration;
-        this.unit = unit;
-        scheduledExecutorService.scheduleAtFixedRate(() -> {
-            if (cache == null || cache.size() == 0) {
-                return;
+        this.maximumSize = builder.maximumSize;
+        this.duration = builder.expireAfterAccess;
+        this.unit = builder.expireAfterAccessUnit;
+        this.loader = loader;
+        this.delegateLoading = delegateLoading;
+        this.expiry = builder.expiry;
+        this.keyFilter = builder.keyFilter;
+        this.metrics = metrics;
+        this.maintenance = CacheMaintenanceScheduler.register(this, MemoryCache::cleanUp, (duration / 2) + 1, unit);
+        if (expiry != null) {
+            enableVariableExpiry();
+        }
+        if (hook != null) {
+            hook.owner = this;
+        }
+    }
+
+    /**
+     * 遍历缓存数据，不加锁(弱一致)，供{@link CacheSnapshots}使用
+     * <br>
+     * 单独设置了有效期的条目传入其过期时间点，其余传入{@link CacheSnapshots#NO_DEADLINE}
+     *
+     * @param visitor 回调
+     * @throws IOException 回调写入失败
+     */
+    void forEachLive(CacheSnapshots.EntryVisitor<K, V> visitor) throws IOException {
+        long now = System.currentTimeMillis();
+        for (Map.Entry<K, V> entry : cache.asMap().entrySet()) {
+            TimingWheel.Node<K> node = deadlines.get(entry.getKey());
+            if (node == null) {
+                visitor.visit(entry.getKey(), entry.getValue(), CacheSnapshots.NO_DEADLINE);
+            } else if (!node.isExpired(now)) {
+                visitor.visit(entry.getKey(), entry.getValue(), node.getDeadline());
             }
-            lock.lock();
-            try {
-                log.trace("cache.cleanUp(),{}", cache);
+        }
+    }
+
+    /**
+     * 定时清除过期缓存
+     */
+    private void cleanUp() {
+        if (cache == null || cache.size() == 0) {
+            return;
+        }
+        try {
+            log.trace("cache.cleanUp(),{}", cache);
+            if (metrics == null) {
                 cache.cleanUp();
-            } catch (Exception e) {
-                log.error("定时清除过期缓存异常,cache {}", cache, e);
-            } finally {
-                lock.unlock();
+                return;
             }
-        }, 0, (duration / 2) + 1, unit);
+            // 淘汰回调在cleanUp的线程中同步执行，期间增加的EXPIRED即本次清理的条目
+            long expired = metrics.evictionCount(RemovalCause.EXPIRED);
+            long start = System.nanoTime();
+            cache.cleanUp();
+            metrics.recordSweep(System.nanoTime() - start, metrics.evictionCount(RemovalCause.EXPIRED) - expired);
+        } catch (Exception e) {
+            log.error("定时清除过期缓存异常,cache {}", cache, e);
+        }
     }
 
 
     /**
-     * 获取值
+     * 创建{@link Builder}
+     *
+     * @param <K> key
+     * @param <V> value
+     * @return {@link Builder}
+     */
+    public static <K, V> Builder<K, V> builder() {
+        return new Builder<>();
+    }
+
+    /**
+     * 获取值，未命中且指定了{@link MemoryCacheLoader}时加载
      *
      * @param key key
-     * @return value
+     * @return value，不存在时返回null
      */
     public V get(K key) {
+        if (metrics == null) {
+            return doGet(key);
+        }
+        long start = System.nanoTime();
+        try {
+            return doGet(key);
+        } finally {
+            metrics.recordGet(System.nanoTime() - start);
+        }
+    }
+
+    private V doGet(K key) {
+        HotKeyTracker<K> tracker = hotKeyTracker;
+        if (tracker != null) {
+            tracker.record(key);
+        }
+        if (keyFilter != null && !keyFilter.mightContain(key)) {
+            // 一定不存在，不查缓存也不加载
+            if (metrics != null) {
+                metrics.recordMiss();
+            }
+            return null;
+        }
         V v = null;
-        lock.lock();
         try {
-            this.cache.cleanUp();
-            v = this.cache.get(key);
+            v = delegateLoading ? this.cache.get(key) : this.cache.getIfPresent(key);
         } catch (Exception e) {
             log.trace("加载key:{} 异常", key, e);
-        } finally {
-            lock.unlock();
+        }
+        if (v != null && variableExpiry) {
+            v = checkDeadline(key, v);
+        }
+        if (metrics != null) {
+            if (v != null) {
+                metrics.recordHit();
+            } else {
+                metrics.recordMiss();
+            }
+        }
+        if (v == null && loader != null) {
+            v = load(key);
         }
         return v;
     }
 
+    /**
+     * 只查缓存，不加载，不记录指标和热点key
+     *
+     * @param key key
+     * @return value，不存在时返回null
+     */
+    V getIfPresent(K key) {
+        V v = this.cache.getIfPresent(key);
+        if (v != null && variableExpiry) {
+            v = checkDeadline(key, v);
+        }
+        return v;
+    }
+
+    /**
+     * 获取值
+     *
+     * @param key key
+     * @return value
+     */
+    public Optional<V> getOptional(K key) {
+        return Optional.ofNullable(get(key));
+    }
+
+    /**
+     * 合并同一个key的并发加载
+     *
+     * @param key key
+     * @return value
+     */
+    private V load(K key) {
+        CompletableFuture<V> future = new CompletableFuture<>();
+        CompletableFuture<V> inFlight = loading.putIfAbsent(key, future);
+        if (inFlight != null) {
+            // 加载失败时返回null，不抛出异常
+            return inFlight.handle((v, e) -> e == null ? v : null).join();
+        }
+        try {
+            V v = this.cache.getIfPresent(key);
+            if (v == null) {
+                v = loadTimed(key);
+                if (v != null) {
+                    storeLoaded(key, v, future);
+                } else if (keyFilter != null) {
+                    keyFilter.recordFalsePositive();
+                }
+            }
+            future.complete(v);
+            return v;
+        } catch (Throwable e) {
+            log.warn("加载key:{} 异常", key, e);
+            future.completeExceptionally(e);
+            return null;
+        } finally {
+            loading.remove(key, future);
+        }
+    }
+
+    /**
+     * 写入加载结果；加载期间被{@link MemoryCache#put}或{@link MemoryCache#invalidate}取消时不写入，
+     * 避免较旧的加载结果覆盖新值
+     *
+     * @param key    key
+     * @param value  加载结果
+     * @param future 本次加载
+     */
+    private void storeLoaded(K key, V value, CompletableFuture<V> future) {
+        if (loading.get(key) != future) {
+            return;
+        }
+        store(key, value);
+        if (loading.get(key) != future) {
+            // 检查与写入之间被取消：删除刚写入的值(已被新值覆盖时不删除)
+            remove(key, value);
+        }
+    }
+
+    /**
+     * 只在当前值为value时删除，供{@link AsyncMemoryCache}撤销被覆盖的加载结果
+     *
+     * @param key   key
+     * @param value value
+     */
+    void remove(K key, V value) {
+        this.cache.asMap().remove(key, value);
+    }
+
+    /**
+     * 取消key正在进行的加载，使其结果不写入缓存
+     */
+    private void abortLoad(K key) {
+        if (loader != null) {
+            loading.remove(key);
+        }
+    }
+
+    private V loadTimed(K key) throws Exception {
+        if (metrics == null) {
+            return loader.load(key);
+        }
+        long start = System.nanoTime();
+        V v = null;
+        try {
+            v = loader.load(key);
+            return v;
+        } finally {
+            metrics.recordLoad(v != null, System.nanoTime() - start);
+        }
+    }
+
 
     /**
      * 存入值
@@ -198,11 +484,204 @@ public class MemoryCache<K, V> implements Serializable {
      * @param value value
      */
     public void put(K key, V value) {
-        lock.lock();
+        abortLoad(key);
+        store(key, value);
+    }
+
+    private void store(K key, V value) {
+        if (metrics == null) {
+            doPut(key, value);
+            return;
+        }
+        long start = System.nanoTime();
         try {
-            this.cache.put(key, value);
+            doPut(key, value);
         } finally {
-            lock.unlock();
+            metrics.recordPut(System.nanoTime() - start);
+        }
+    }
+
+    private void doPut(K key, V value) {
+        if (keyFilter != null) {
+            keyFilter.put(key);
+        }
+        if (!variableExpiry) {
+            this.cache.put(key, value);
+            return;
+        }
+        long now = System.currentTimeMillis();
+        TimingWheel.Node<K> current = deadlines.get(key);
+        if (expiry == null) {
+            // 未指定过期策略时普通写入不带条目有效期
+            if (current != null && deadlines.remove(key, current)) {
+                deadlineQueue.retire(current);
+            }
+            this.cache.put(key, value);
+            return;
+        }
+        long duration = current == null || current.isExpired(now)
+                ? expiry.expireAfterCreate(key, value, now)
+                : expiry.expireAfterUpdate(key, value, now, current.getDeadline() - now);
+        putWithDeadline(key, value, deadlineOf(now, duration));
+    }
+
+    /**
+     * 存入值并指定该条目的有效期
+     *
+     * @param key      key
+     * @param value    value
+     * @param duration 有效期
+     * @param unit     有效期单位
+     */
+    public void put(K key, V value, long duration, TimeUnit unit) {
+        long start = metrics == null ? 0 : System.nanoTime();
+        abortLoad(key);
+        if (keyFilter != null) {
+            keyFilter.put(key);
+        }
+        enableVariableExpiry();
+        putWithDeadline(key, value, deadlineOf(System.currentTimeMillis(), unit.toMillis(duration)));
+        if (metrics != null) {
+            metrics.recordPut(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * 先登记过期时间再写入缓存，过期回调只删除仍对应同一节点的key
+     *
+     * @param key      key
+     * @param value    value
+     * @param deadline 过期时间点(毫秒)
+     */
+    private void putWithDeadline(K key, V value, long deadline) {
+        TimingWheel.Node<K> node = new TimingWheel.Node<>(key, deadline);
+        TimingWheel.Node<K> previous = deadlines.put(key, node);
+        if (previous != null) {
+            deadlineQueue.retire(previous);
+        }
+        deadlineQueue.schedule(node);
+        this.cache.put(key, value);
+        if (node.isRetired() && !deadlines.containsKey(key)) {
+            // 写入前同一个key的旧值被淘汰，淘汰回调移除了刚登记的节点
+            TimingWheel.Node<K> renewed = new TimingWheel.Node<>(key, deadline);
+            if (deadlines.putIfAbsent(key, renewed) == null) {
+                deadlineQueue.schedule(renewed);
+            }
+        }
+    }
+
+    /**
+     * 检查条目有效期，读取后按{@link MemoryCacheExpiry#expireAfterRead}更新
+     *
+     * @param key   key
+     * @param value 缓存中的value
+     * @return 未过期的value
+     */
+    private V checkDeadline(K key, V value) {
+        TimingWheel.Node<K> node = deadlines.get(key);
+        if (node == null) {
+            return value;
+        }
+        long now = System.currentTimeMillis();
+        if (node.isExpired(now)) {
+            if (deadlines.remove(key, node)) {
+                deadlineQueue.retire(node);
+                this.cache.asMap().remove(key, value);
+            }
+            return null;
+        }
+        if (expiry != null) {
+            long remaining = node.getDeadline() - now;
+            long duration = expiry.expireAfterRead(key, value, now, remaining);
+            if (duration != remaining) {
+                node.setDeadline(deadlineOf(now, duration));
+                deadlineQueue.schedule(node);
+            }
+        }
+        return value;
+    }
+
+    /**
+     * 时间轮回调，只删除仍对应同一节点的key
+     *
+     * @param node 到期节点
+     */
+    private boolean expireEntry(TimingWheel.Node<K> node) {
+        K key = node.getKey();
+        long now = System.currentTimeMillis();
+        boolean[] expired = new boolean[1];
+        // 到期后、删除前可能被expireAfterRead延长，在computeIfPresent内重新检查
+        this.cache.asMap().computeIfPresent(key, (k, v) ->
+                node.isExpired(now) && (expired[0] = deadlines.remove(k, node)) ? null : v);
+        if (node.isExpired(now)) {
+            deadlines.remove(key, node);
+        }
+        if (expired[0] && metrics != null) {
+            // 通过asMap删除在Guava中记为EXPLICIT，这里按过期计数
+            metrics.recordRemoval(RemovalCause.EXPIRED);
+        }
+        return expired[0];
+    }
+
+    /**
+     * 清除按条目过期的缓存
+     */
+    private void sweepDeadlines() {
+        long now = System.currentTimeMillis();
+        if (metrics == null) {
+            deadlineQueue.expire(now, this::expireEntry);
+            return;
+        }
+        long start = System.nanoTime();
+        long[] expired = new long[1];
+        deadlineQueue.expire(now, node -> {
+            if (expireEntry(node)) {
+                expired[0]++;
+            }
+        });
+        metrics.recordSweep(System.nanoTime() - start, expired[0]);
+    }
+
+    /**
+     * 开启按条目过期，注册每秒一次的清理任务
+     * <br>
+     * 已开启时只读一次volatile，不进入同步块
+     */
+    private void enableVariableExpiry() {
+        if (!variableExpiry) {
+            registerDeadlineMaintenance();
+        }
+    }
+
+    private synchronized void registerDeadlineMaintenance() {
+        if (deadlineMaintenance == null) {
+            deadlineMaintenance = CacheMaintenanceScheduler.register(this, MemoryCache::sweepDeadlines, 1, TimeUnit.SECONDS);
+            variableExpiry = true;
+        }
+    }
+
+    private static long deadlineOf(long now, long duration) {
+        return duration >= Long.MAX_VALUE - now ? Long.MAX_VALUE : now + Math.max(duration, 0);
+    }
+
+    /**
+     * 条目被Guava淘汰(容量、expireAfterAccess、回收)时移除对应的过期节点，
+     * 否则节点一直留在时间轮中，重新加载的值会被旧节点到期删除
+     *
+     * @param key key
+     */
+    private void onEvicted(K key) {
+        if (!variableExpiry) {
+            return;
+        }
+        TimingWheel.Node<K> node = deadlines.get(key);
+        // 不能在deadlines的compute中读Guava：读操作可能派发其他key的移除回调，嵌套修改deadlines
+        if (node == null || this.cache.asMap().containsKey(key)) {
+            // 淘汰后已重新写入，节点属于新值
+            return;
+        }
+        if (deadlines.remove(key, node)) {
+            deadlineQueue.retire(node);
         }
     }
 
@@ -213,12 +692,7 @@ public class MemoryCache<K, V> implements Serializable {
      * @return 缓存大小
      */
     public Long size() {
-        lock.lock();
-        try {
-            return this.cache.size();
-        } finally {
-            lock.unlock();
-        }
+        return this.cache.size();
     }
 
 
@@ -228,30 +702,365 @@ public class MemoryCache<K, V> implements Serializable {
      * @param key key
      */
     public void invalidate(K key) {
-        lock.lock();
-        try {
-            this.cache.invalidate(key);
-        } finally {
-            lock.unlock();
+        abortLoad(key);
+        this.cache.invalidate(key);
+        if (variableExpiry) {
+            TimingWheel.Node<K> node = deadlines.remove(key);
+            if (node != null) {
+                deadlineQueue.retire(node);
+            }
         }
     }
 
+    /**
+     * 批量丢弃缓存值
+     *
+     * @param keys keys
+     */
+    public void invalidateAll(Iterable<? extends K> keys) {
+        keys.forEach(this::abortLoad);
+        this.cache.invalidateAll(keys);
+        if (variableExpiry) {
+            for (K key : keys) {
+                TimingWheel.Node<K> node = deadlines.remove(key);
+                if (node != null) {
+                    deadlineQueue.retire(node);
+                }
+            }
+        }
+    }
 
     /**
      * 清空缓存
      */
     public void invalidateAll() {
-        lock.lock();
-        try {
-            this.cache.invalidateAll();
-        } finally {
-            lock.unlock();
+        if (loader != null) {
+            loading.clear();
+        }
+        this.cache.invalidateAll();
+        if (variableExpiry) {
+            for (K key : deadlines.keySet()) {
+                TimingWheel.Node<K> node = deadlines.remove(key);
+                if (node != null) {
+                    deadlineQueue.retire(node);
+                }
+            }
         }
     }
 
+    /**
+     * 开启热点key统计，每次{@link MemoryCache#get(Object)}额外记录一次访问；未开启时只多一次null判断
+     *
+     * @param topK        统计的热点key数量
+     * @param decayPeriod 计数减半周期
+     * @param unit        周期单位
+     */
+    public synchronized void enableHotKeyTracking(int topK, long decayPeriod, TimeUnit unit) {
+        if (hotKeyTracker == null) {
+            hotKeyTracker = new HotKeyTracker<>(topK, decayPeriod, unit);
+        }
+    }
+
+    /**
+     * 当前热点key，按估算访问次数降序
+     *
+     * @return 未开启统计时返回空列表
+     */
+    public List<HotKeyTracker.HotKey<K>> hotKeys() {
+        HotKeyTracker<K> tracker = hotKeyTracker;
+        return tracker == null ? Collections.emptyList() : tracker.snapshot();
+    }
+
+    /**
+     * @return 运行指标，未通过{@link Builder#recordMetrics()}开启时为空
+     */
+    public Optional<CacheMetrics> metrics() {
+        return Optional.ofNullable(metrics);
+    }
+
+    /**
+     * Guava统计的命中、加载和淘汰次数
+     *
+     * @return {@link CacheStats}
+     */
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+    /**
+     * 停止定时清理
+     */
     @Override
-    protected void finalize() throws Throwable {
-        super.finalize();
-        scheduledExecutorService.shutdown();
+    public synchronized void close() {
+        maintenance.close();
+        if (deadlineMaintenance != null) {
+            deadlineMaintenance.close();
+        }
+        if (hotKeyTracker != null) {
+            hotKeyTracker.close();
+        }
+    }
+
+    /**
+     * 把{@link MemoryCacheLoader}适配为Guava的{@link CacheLoader}，刷新在指定线程池中异步执行
+     */
+    private static final class LoaderAdapter<K, V> extends CacheLoader<K, V> {
+        private final MemoryCacheLoader<K, V> loader;
+        private final Executor executor;
+
+        private LoaderAdapter(MemoryCacheLoader<K, V> loader, Executor executor) {
+            this.loader = loader;
+            this.executor = executor;
+        }
+
+        @Override
+        public V load(K key) throws Exception {
+            V v = loader.load(key);
+            if (v == null) {
+                throw new InvalidCacheLoadException("loader returned null for key " + key);
+            }
+            return v;
+        }
+
+        @Override
+        public ListenableFuture<V> reload(K key, V oldValue) {
+            ListenableFutureTask<V> task = ListenableFutureTask.create(() -> {
+                V v = loader.reload(key, oldValue);
+                return v == null ? oldValue : v;
+            });
+            try {
+                executor.execute(task);
+            } catch (RejectedExecutionException e) {
+                // 刷新线程池已满，继续使用旧值，下一个刷新周期再试
+                log.debug("刷新key:{} 被拒绝,继续使用旧值", key);
+                return Futures.immediateFuture(oldValue);
+            }
+            return task;
+        }
+    }
+
+    /**
+     * Guava的移除回调：记录淘汰指标、移除被淘汰条目的过期节点，再转给用户的回调
+     */
+    private static final class EvictionHook<K, V> implements RemovalListener<K, V> {
+        private final CacheMetrics metrics;
+        private final RemovalListener<K, V> delegate;
+
+        /**
+         * 构造完成后赋值，之前缓存为空，不会有回调
+         */
+        private volatile MemoryCache<K, V> owner;
+
+        private EvictionHook(CacheMetrics metrics, RemovalListener<K, V> delegate) {
+            this.metrics = metrics;
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void onRemoval(RemovalNotification<K, V> notification) {
+            if (notification.wasEvicted()) {
+                if (metrics != null) {
+                    metrics.recordRemoval(notification.getCause());
+                }
+                MemoryCache<K, V> cache = owner;
+                // wasEvicted不包括EXPLICIT(由删除方自行处理)和REPLACED(节点属于新值)
+                if (cache != null && notification.getKey() != null) {
+                    cache.onEvicted(notification.getKey());
+                }
+            }
+            if (delegate != null) {
+                delegate.onRemoval(notification);
+            }
+        }
+    }
+
+    /**
+     * {@link MemoryCache}构造器
+     *
+     * @param <K> key
+     * @param <V> value
+     */
+    public static final class Builder<K, V> {
+        /**
+         * {@link Builder#maximumBytes(long)}估算单个key或value时最多遍历的对象数
+         */
+        public static final int WEIGH_MAX_OBJECTS = 1 << 16;
+
+        private int maximumSize = MAXIMUM_SIZE_DEFAULT_VALUE;
+        private long maximumBytes = -1;
+        private long expireAfterAccess = DURATION_DEFAULT_VALUE;
+        private TimeUnit expireAfterAccessUnit = TimeUnit.SECONDS;
+        private boolean expireAfterAccessSet;
+        private MemoryCacheExpiry<K, V> expiry;
+        private long refreshAfterWrite = -1;
+        private TimeUnit refreshAfterWriteUnit = TimeUnit.SECONDS;
+        private Executor refreshExecutor = CacheExecutors.loader();
+        private RemovalListener<? super K, ? super V> removalListener;
+        private KeyBloomFilter<K> keyFilter;
+        private boolean recordMetrics;
+
+        private Builder() {
+        }
+
+        /**
+         * @param maximumSize 缓存池大小，在缓存项接近该大小时， Guava开始回收旧的缓存项
+         * @return this
+         */
+        public Builder<K, V> maximumSize(int maximumSize) {
+            this.maximumSize = maximumSize;
+            return this;
+        }
+
+        /**
+         * @param duration 过期时间(距离最后一次访问时间)
+         * @param unit     过期时间单位
+         * @return this
+         */
+        public Builder<K, V> expireAfterAccess(long duration, TimeUnit unit) {
+            this.expireAfterAccess = duration;
+            this.expireAfterAccessUnit = unit;
+            this.expireAfterAccessSet = true;
+            return this;
+        }
+
+        /**
+         * 按条目计算有效期，未同时设置{@link Builder#expireAfterAccess(long, TimeUnit)}时不再使用默认的访问过期
+         *
+         * @param expiry 过期策略
+         * @return this
+         */
+        public Builder<K, V> expireAfter(MemoryCacheExpiry<K, V> expiry) {
+            this.expiry = expiry;
+            return this;
+        }
+
+        /**
+         * 写入超过指定时间后，下一次读取触发异步刷新(需要{@link MemoryCacheLoader})
+         *
+         * @param duration 刷新间隔
+         * @param unit     刷新间隔单位
+         * @return this
+         */
+        public Builder<K, V> refreshAfterWrite(long duration, TimeUnit unit) {
+            this.refreshAfterWrite = duration;
+            this.refreshAfterWriteUnit = unit;
+            return this;
+        }
+
+        /**
+         * 刷新线程池，默认{@link CacheExecutors#loader()}
+         * <br>
+         * 线程池饱和时应抛出{@link RejectedExecutionException}而不是静默丢弃任务
+         *
+         * @param executor 线程池
+         * @return this
+         */
+        public Builder<K, V> refreshExecutor(Executor executor) {
+            this.refreshExecutor = executor;
+            return this;
+        }
+
+        /**
+         * 按估算的堆内存大小限制容量，设置后{@link Builder#maximumSize(int)}不再生效
+         * <br>
+         * 每个条目的大小为key、value通过{@link ObjectSizeEstimator#deepSizeOf(Object, int, long)}估算的深大小之和，在写入时计算一次；
+         * 每次估算最多遍历{@link Builder#WEIGH_MAX_OBJECTS}个对象、累计到maximumBytes为止
+         *
+         * @param maximumBytes 最大字节数
+         * @return this
+         */
+        public Builder<K, V> maximumBytes(long maximumBytes) {
+            if (maximumBytes <= 0) {
+                throw new IllegalArgumentException("maximumBytes must be positive: " + maximumBytes);
+            }
+            this.maximumBytes = maximumBytes;
+            return this;
+        }
+
+        /**
+         * 数据被移除(淘汰、过期、删除、覆盖)时的回调，可通过{@link com.google.common.cache.RemovalCause}区分原因
+         * <br>
+         * 回调在读写线程中同步执行，不应有耗时操作
+         *
+         * @param removalListener 移除回调
+         * @return this
+         */
+        public Builder<K, V> removalListener(RemovalListener<? super K, ? super V> removalListener) {
+            this.removalListener = removalListener;
+            return this;
+        }
+
+        /**
+         * 在缓存前使用布隆过滤器，过滤器判断一定不存在的key直接返回null，不查缓存也不调用{@link MemoryCacheLoader}
+         * <br>
+         * 过滤器需要预先写入后端已存在的key({@link KeyBloomFilter#putAll(Iterable)})，之后写入和加载成功的key会自动加入
+         *
+         * @param keyFilter 布隆过滤器
+         * @return this
+         */
+        public Builder<K, V> keyFilter(KeyBloomFilter<K> keyFilter) {
+            this.keyFilter = keyFilter;
+            return this;
+        }
+
+        /**
+         * 开启{@link CacheMetrics}，通过{@link MemoryCache#metrics()}读取
+         * <br>
+         * 每次get/put额外调用两次{@link System#nanoTime()}，淘汰数量通过移除回调统计
+         *
+         * @return this
+         */
+        public Builder<K, V> recordMetrics() {
+            this.recordMetrics = true;
+            return this;
+        }
+
+        /**
+         * 未命中时直接返回null
+         *
+         * @return {@link MemoryCache}
+         */
+        public MemoryCache<K, V> build() {
+            return build(null);
+        }
+
+        /**
+         * @param loader 数据加载
+         * @return {@link MemoryCache}
+         */
+        public MemoryCache<K, V> build(MemoryCacheLoader<K, V> loader) {
+            if (refreshAfterWrite > 0 && loader == null) {
+                throw new IllegalStateException("refreshAfterWrite requires a loader");
+            }
+            CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder().recordStats();
+            if (maximumBytes > 0) {
+                long limit = maximumBytes;
+                builder.maximumWeight(limit).weigher((key, value) -> weigh(key, value, limit));
+            } else {
+                builder.maximumSize(maximumSize);
+            }
+            if (expiry == null || expireAfterAccessSet) {
+                builder.expireAfterAccess(expireAfterAccess, expireAfterAccessUnit);
+            }
+            if (refreshAfterWrite > 0) {
+                builder.refreshAfterWrite(refreshAfterWrite, refreshAfterWriteUnit);
+            }
+            CacheMetrics metrics = recordMetrics ? new CacheMetrics() : null;
+            // RemovalNotification只读取key/value，按K、V传给? super K、? super V的回调是安全的
+            @SuppressWarnings("unchecked")
+            RemovalListener<K, V> delegate = (RemovalListener<K, V>) removalListener;
+            EvictionHook<K, V> hook = new EvictionHook<>(metrics, delegate);
+            CacheBuilder<K, V> typed = builder.removalListener(hook);
+            LoadingCache<K, V> cache = loader == null
+                    ? typed.build(CacheLoader.from(k -> null))
+                    : typed.build(new LoaderAdapter<>(loader, refreshExecutor));
+            return new MemoryCache<>(cache, this, loader, false, metrics, hook);
+        }
+
+        private static int weigh(Object key, Object value, long limit) {
+            long size = ObjectSizeEstimator.deepSizeOf(key, WEIGH_MAX_OBJECTS, limit)
+                    + ObjectSizeEstimator.deepSizeOf(value, WEIGH_MAX_OBJECTS, limit);
+            return (int) Math.min(size, Integer.MAX_VALUE);
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,24 @@
+package io.github.dousxcoder.tools.cache;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * {@link AsyncMemoryCache}的批量数据加载，多个未命中的key合并为一次调用
+ *
+ * @param <K> key
+ * @param <V> value
+ * @author dousx
+ */
+@FunctionalInterface
+public interface MemoryCacheBulkLoader<K, V> {
+
+    /**
+     * 批量加载
+     *
+     * @param keys 未命中的key
+     * @return key -> value，不存在的key可以不返回(不会缓存)
+     * @throws Exception 加载异常，本批次所有key都会失败
+     */
+    Map<K, V> loadAll(Set<K> keys) throws Exception;
+}
@@ -0,0 +1,49 @@
+package io.github.dousxcoder.tools.cache;
+
+/**
+ * {@link MemoryCache}按条目计算的过期策略
+ * <br>
+ * 返回值均为从当前时间起的有效期(毫秒)，{@link Long#MAX_VALUE}表示不过期
+ *
+ * @param <K> key
+ * @param <V> value
+ * @author dousx
+ */
+public interface MemoryCacheExpiry<K, V> {
+
+    /**
+     * 新写入时的有效期
+     *
+     * @param key         key
+     * @param value       value
+     * @param currentTime 当前时间(毫秒)
+     * @return 有效期(毫秒)
+     */
+    long expireAfterCreate(K key, V value, long currentTime);
+
+    /**
+     * 覆盖写入时的有效期，默认保持剩余有效期
+     *
+     * @param key             key
+     * @param value           新value
+     * @param currentTime     当前时间(毫秒)
+     * @param currentDuration 剩余有效期(毫秒)
+     * @return 有效期(毫秒)
+     */
+    default long expireAfterUpdate(K key, V value, long currentTime, long currentDuration) {
+        return currentDuration;
+    }
+
+    /**
+     * 读取后的有效期，默认保持剩余有效期
+     *
+     * @param key             key
+     * @param value           value
+     * @param currentTime     当前时间(毫秒)
+     * @param currentDuration 剩余有效期(毫秒)
+     * @return 有效期(毫秒)
+     */
+    default long expireAfterRead(K key, V value, long currentTime, long currentDuration) {
+        return currentDuration;
+    }
+}
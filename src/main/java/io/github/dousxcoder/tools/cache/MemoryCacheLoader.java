@@ -0,0 +1,35 @@
+package io.github.dousxcoder.tools.cache;
+
+/**
+ * {@link MemoryCache}的数据加载
+ *
+ * @param <K> key
+ * @param <V> value
+ * @author dousx
+ */
+@FunctionalInterface
+public interface MemoryCacheLoader<K, V> {
+
+    /**
+     * 加载key对应的值
+     *
+     * @param key key
+     * @return value，不存在时返回null(不会缓存)
+     * @throws Exception 加载异常
+     */
+    V load(K key) throws Exception;
+
+    /**
+     * 刷新已缓存的值，在刷新线程池中执行，期间读取仍返回旧值
+     * <br>
+     * 返回null时保留旧值
+     *
+     * @param key      key
+     * @param oldValue 旧值
+     * @return 新值
+     * @throws Exception 加载异常
+     */
+    default V reload(K key, V oldValue) throws Exception {
+        return load(key);
+    }
+}
@@ -0,0 +1,614 @@
+package io.github.dousxcoder.tools.cache;
+
+import cn.hutool.log.Log;
+import com.google.common.cache.CacheStats;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 堆外带有效期缓存
+ * <br>
+ * key、value经{@link CacheCodec}序列化后顺序追加到固定大小的堆外内存块(slab)中，
+ * 堆内只保留key到偏移量的索引，缓存的数据量不会撑大老年代、拉长GC停顿。
+ * <ul>
+ *     <li>内存块总大小不超过构造时指定的字节上限，写满时淘汰最早写满的内存块</li>
+ *     <li>过期时间由{@link TimingWheel}管理，定时任务清理过期数据并压缩有效数据不足一半的内存块</li>
+ *     <li>单条记录(key+value+8字节头)不能超过一个内存块</li>
+ * </ul>
+ * 记录格式：[key长度 int][value长度 int][key][value]
+ *
+ * @author dousx
+ */
+public class OffHeapExpiryCache<K, V> implements AutoCloseable {
+    private static final Log log = Log.get(OffHeapExpiryCache.class);
+
+    /**
+     * 默认内存块大小 4M
+     */
+    private static final int DEFAULT_SLAB_SIZE = 4 << 20;
+
+    /**
+     * 记录头 key长度+value长度
+     */
+    private static final int HEADER = 8;
+
+    /**
+     * 有效数据低于该比例的内存块会被压缩
+     */
+    private static final double COMPACT_THRESHOLD = 0.5;
+
+    private final CacheCodec<K> keyCodec;
+    private final CacheCodec<V> valueCodec;
+    private final SlabAllocator allocator;
+
+    /**
+     * 默认有效期 毫秒
+     */
+    private final long expiry;
+    private final int slabSize;
+    private final int maxSlabs;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * 以下字段由{@link OffHeapExpiryCache#lock}保护
+     */
+    private final Map<K, Location> index = new HashMap<>();
+    private final TimingWheel<K> timingWheel = new TimingWheel<>(System.currentTimeMillis());
+    private final List<Slab> slabs = new ArrayList<>();
+    private final ArrayDeque<Slab> freeSlabs = new ArrayDeque<>();
+
+    /**
+     * 已写满的内存块，按写满的先后顺序
+     */
+    private final ArrayDeque<Slab> sealedSlabs = new ArrayDeque<>();
+    private Slab activeSlab;
+    private Slab compactingSlab;
+    private boolean closed;
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+
+    /**
+     * 用于定时清除已过期缓存、压缩内存块
+     */
+    private final CacheMaintenanceScheduler.Registration maintenance;
+
+    /**
+     * @param maxBytes   堆外内存上限(字节)
+     * @param expiryTime 单位毫秒（不可小于0）
+     * @param keyCodec   key序列化
+     * @param valueCodec value序列化
+     */
+    public OffHeapExpiryCache(long maxBytes, long expiryTime, CacheCodec<K> keyCodec, CacheCodec<V> valueCodec) {
+        this(maxBytes, (int) Math.min(DEFAULT_SLAB_SIZE, Math.max(maxBytes / 4, 1 << 12)), expiryTime, keyCodec, valueCodec);
+    }
+
+    /**
+     * @param maxBytes   堆外内存上限(字节)
+     * @param slabSize   单个内存块大小(字节)，至少能放下两个内存块
+     * @param expiryTime 单位毫秒（不可小于0）
+     * @param keyCodec   key序列化
+     * @param valueCodec value序列化
+     */
+    public OffHeapExpiryCache(long maxBytes, int slabSize, long expiryTime, CacheCodec<K> keyCodec, CacheCodec<V> valueCodec) {
+        this(maxBytes, slabSize, expiryTime, keyCodec, valueCodec, SlabAllocator.DIRECT);
+    }
+
+    /**
+     * 数据存放在本地磁盘内存映射文件中的缓存，每个内存块对应directory下的一个段文件
+     *
+     * @param directory  段文件目录
+     * @param maxBytes   磁盘空间上限(字节)
+     * @param slabSize   单个段文件大小(字节)
+     * @param expiryTime 单位毫秒（不可小于0）
+     * @param keyCodec   key序列化
+     * @param valueCodec value序列化
+     * @param <K>        key
+     * @param <V>        value
+     * @return {@link OffHeapExpiryCache}
+     * @throws IOException 创建目录失败
+     */
+    public static <K, V> OffHeapExpiryCache<K, V> mappedFile(Path directory, long maxBytes, int slabSize, long expiryTime,
+                                                             CacheCodec<K> keyCodec, CacheCodec<V> valueCodec) throws IOException {
+        MappedFileSlabAllocator allocator = new MappedFileSlabAllocator(directory);
+        try {
+            return new OffHeapExpiryCache<>(maxBytes, slabSize, expiryTime, keyCodec, valueCodec, allocator);
+        } catch (RuntimeException e) {
+            allocator.close();
+            throw e;
+        }
+    }
+
+    OffHeapExpiryCache(long maxBytes, int slabSize, long expiryTime, CacheCodec<K> keyCodec, CacheCodec<V> valueCodec,
+                       SlabAllocator allocator) {
+        if (expiryTime <= 0) {
+            throw new IllegalArgumentException("expiryTime must be positive: " + expiryTime);
+        }
+        if (slabSize <= HEADER || maxBytes / slabSize < 2) {
+            throw new IllegalArgumentException("maxBytes must hold at least two slabs: maxBytes=" + maxBytes + ", slabSize=" + slabSize);
+        }
+        this.expiry = expiryTime;
+        this.slabSize = slabSize;
+        this.maxSlabs = (int) Math.min(maxBytes / slabSize, Integer.MAX_VALUE);
+        this.keyCodec = keyCodec;
+        this.valueCodec = valueCodec;
+        this.allocator = allocator;
+        this.maintenance = CacheMaintenanceScheduler.register(this, OffHeapExpiryCache::cleanUp, 1, TimeUnit.SECONDS);
+    }
+
+    /**
+     * @param key key
+     * @return 未过期的value，不存在时返回null
+     */
+    public V get(K key) {
+        if (key == null) {
+            return null;
+        }
+        byte[] bytes = null;
+        lock.readLock().lock();
+        try {
+            Location location = index.get(key);
+            if (location != null && !location.isExpired(System.currentTimeMillis())) {
+                bytes = new byte[location.valueLength];
+                ByteBuffer buffer = location.slab.buffer.duplicate();
+                buffer.position(location.offset + HEADER + location.keyLength);
+                buffer.get(bytes);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        if (bytes == null) {
+            missCount.increment();
+            return null;
+        }
+        hitCount.increment();
+        return valueCodec.decode(bytes);
+    }
+
+    public boolean containsKey(K key) {
+        if (key == null) {
+            return false;
+        }
+        lock.readLock().lock();
+        try {
+            Location location = index.get(key);
+            return location != null && !location.isExpired(System.currentTimeMillis());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void put(K key, V value) {
+        put(key, value, this.expiry);
+    }
+
+    /**
+     * @param key        key
+     * @param value      value
+     * @param expiryTime 键值对有效期 毫秒
+     */
+    public void put(K key, V value, long expiryTime) {
+        if (key == null || value == null) {
+            throw new NullPointerException();
+        }
+        // 序列化放在锁外
+        byte[] keyBytes = keyCodec.encode(key);
+        byte[] valueBytes = valueCodec.encode(value);
+        int recordSize = HEADER + keyBytes.length + valueBytes.length;
+        if (recordSize > slabSize) {
+            throw new IllegalArgumentException("entry size " + recordSize + " exceeds slab size " + slabSize);
+        }
+        long deadline = System.currentTimeMillis() + expiryTime;
+        lock.writeLock().lock();
+        try {
+            checkOpen();
+            Location old = index.remove(key);
+            if (old != null) {
+                release(old);
+            }
+            Slab slab = slabFor(recordSize);
+            int offset = append(slab, keyBytes, valueBytes);
+            Location location = new Location(key, deadline, slab, offset, keyBytes.length, valueBytes.length);
+            slab.link(location);
+            index.put(key, location);
+            timingWheel.schedule(location);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @param key key
+     * @return 是否存在未过期的key
+     */
+    public boolean remove(K key) {
+        if (key == null) {
+            return false;
+        }
+        lock.writeLock().lock();
+        try {
+            Location location = index.remove(key);
+            if (location == null) {
+                return false;
+            }
+            release(location);
+            return !location.isExpired(System.currentTimeMillis());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 数量(可能包含尚未清理的过期数据)
+     *
+     * @return 数量
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return index.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 已分配的堆外内存(字节)
+     *
+     * @return 字节数
+     */
+    public long allocatedBytes() {
+        lock.readLock().lock();
+        try {
+            return (long) slabs.size() * slabSize;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 有效数据占用的堆外内存(字节)
+     *
+     * @return 字节数
+     */
+    public long liveBytes() {
+        lock.readLock().lock();
+        try {
+            long live = 0;
+            for (Slab slab : slabs) {
+                live += slab.liveBytes;
+            }
+            return live;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 命中率等统计，{@link CacheStats#evictionCount()}为超出内存上限被淘汰的数量
+     *
+     * @return {@link CacheStats}
+     */
+    public CacheStats stats() {
+        return new CacheStats(hitCount.sum(), missCount.sum(), 0, 0, 0, evictionCount.sum());
+    }
+
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            index.clear();
+            timingWheel.clear();
+            sealedSlabs.clear();
+            freeSlabs.clear();
+            for (Slab slab : slabs) {
+                slab.reset();
+                freeSlabs.add(slab);
+            }
+            activeSlab = null;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 清除过期缓存，压缩有效数据不足一半的内存块
+     */
+    public void cleanUp() {
+        lock.writeLock().lock();
+        try {
+            if (closed) {
+                return;
+            }
+            timingWheel.advance(System.currentTimeMillis(), this::expire);
+            compact();
+        } catch (Exception e) {
+            log.error("堆外缓存清理异常", e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 停止定时清理并释放堆外内存
+     */
+    @Override
+    public void close() {
+        maintenance.close();
+        lock.writeLock().lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            index.clear();
+            timingWheel.clear();
+            sealedSlabs.clear();
+            freeSlabs.clear();
+            slabs.clear();
+            activeSlab = null;
+            allocator.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("cache closed");
+        }
+    }
+
+    /**
+     * 时间轮回调(持有写锁)，时间轮中只有本实例的{@link Location}
+     */
+    @SuppressWarnings("unchecked")
+    private void expire(TimingWheel.Node<K> node) {
+        Location location = (Location) node;
+        if (index.remove(location.getKey(), location)) {
+            release(location);
+        }
+    }
+
+    /**
+     * 释放记录占用的空间，内存块没有有效数据时回收(持有写锁)
+     */
+    private void release(Location location) {
+        timingWheel.deschedule(location);
+        Slab slab = location.slab;
+        slab.unlink(location);
+        if (slab.liveBytes == 0 && slab != activeSlab && slab != compactingSlab) {
+            sealedSlabs.remove(slab);
+            slab.reset();
+            freeSlabs.add(slab);
+        }
+    }
+
+    /**
+     * 找到能写入recordSize字节的内存块(持有写锁)
+     */
+    private Slab slabFor(int recordSize) {
+        Slab slab = activeSlab;
+        if (slab != null && slabSize - slab.writeOffset >= recordSize) {
+            return slab;
+        }
+        if (slab != null) {
+            activeSlab = null;
+            if (slab.liveBytes == 0) {
+                slab.reset();
+                freeSlabs.add(slab);
+            } else {
+                sealedSlabs.addLast(slab);
+            }
+        }
+        activeSlab = acquireSlab();
+        return activeSlab;
+    }
+
+    private Slab acquireSlab() {
+        Slab slab = freeSlabs.pollFirst();
+        if (slab != null) {
+            return slab;
+        }
+        if (slabs.size() < maxSlabs) {
+            try {
+                slab = new Slab(allocator.allocate(slabs.size(), slabSize));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            slabs.add(slab);
+            return slab;
+        }
+        if (compactingSlab == null) {
+            // 压缩期间不推进时间轮：过期回调会修改正在搬移的内存块的记录链表
+            timingWheel.advance(System.currentTimeMillis(), this::expire);
+            slab = freeSlabs.pollFirst();
+            if (slab != null) {
+                return slab;
+            }
+        }
+        // 内存已满，淘汰最早写满的内存块
+        Slab victim = sealedSlabs.pollFirst();
+        if (victim == compactingSlab) {
+            Slab next = sealedSlabs.pollFirst();
+            sealedSlabs.addFirst(victim);
+            victim = next;
+        }
+        if (victim == null) {
+            throw new IllegalStateException("no slab available");
+        }
+        evict(victim);
+        return victim;
+    }
+
+    private void evict(Slab slab) {
+        Location location = slab.head;
+        while (location != null) {
+            Location next = location.slabNext;
+            index.remove(location.getKey(), location);
+            timingWheel.deschedule(location);
+            evictionCount.increment();
+            location = next;
+        }
+        slab.reset();
+    }
+
+    /**
+     * 把有效数据不足一半的内存块中的记录搬到当前内存块(持有写锁)
+     * <br>
+     * 只在剩余空间足够时进行，压缩本身不会触发淘汰
+     */
+    private void compact() {
+        List<Slab> candidates = new ArrayList<>();
+        for (Slab slab : sealedSlabs) {
+            if (slab.liveBytes < slabSize * COMPACT_THRESHOLD) {
+                candidates.add(slab);
+            }
+        }
+        if (candidates.isEmpty()) {
+            return;
+        }
+        candidates.sort((a, b) -> Long.compare(a.liveBytes, b.liveBytes));
+        for (Slab slab : candidates) {
+            long available = (activeSlab == null ? 0 : slabSize - activeSlab.writeOffset)
+                    + (long) (freeSlabs.size() + maxSlabs - slabs.size()) * slabSize;
+            // 记录不能跨内存块，预留一个内存块的余量
+            if (slab.liveBytes + slabSize > available) {
+                return;
+            }
+            compactingSlab = slab;
+            try {
+                // 先取快照，搬移前确认记录仍在索引中且仍在该内存块
+                List<Location> locations = new ArrayList<>();
+                for (Location location = slab.head; location != null; location = location.slabNext) {
+                    locations.add(location);
+                }
+                for (Location location : locations) {
+                    if (location.slab == slab && index.get(location.getKey()) == location) {
+                        move(location);
+                    }
+                }
+            } finally {
+                compactingSlab = null;
+            }
+            sealedSlabs.remove(slab);
+            slab.reset();
+            freeSlabs.add(slab);
+        }
+    }
+
+    private void move(Location location) {
+        int recordSize = location.recordSize();
+        byte[] record = new byte[recordSize];
+        ByteBuffer source = location.slab.buffer.duplicate();
+        source.position(location.offset);
+        source.get(record);
+        Slab target = slabFor(recordSize);
+        ByteBuffer buffer = target.buffer.duplicate();
+        buffer.position(target.writeOffset);
+        buffer.put(record);
+        location.slab.unlink(location);
+        location.slab = target;
+        location.offset = target.writeOffset;
+        target.writeOffset += recordSize;
+        target.link(location);
+    }
+
+    private int append(Slab slab, byte[] keyBytes, byte[] valueBytes) {
+        int offset = slab.writeOffset;
+        ByteBuffer buffer = slab.buffer.duplicate();
+        buffer.position(offset);
+        buffer.putInt(keyBytes.length);
+        buffer.putInt(valueBytes.length);
+        buffer.put(keyBytes);
+        buffer.put(valueBytes);
+        slab.writeOffset = buffer.position();
+        return offset;
+    }
+
+    /**
+     * 内存块
+     */
+    private final class Slab {
+        private final ByteBuffer buffer;
+        private int writeOffset;
+        private long liveBytes;
+
+        /**
+         * 内存块中有效记录组成的链表
+         */
+        private Location head;
+
+        private Slab(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        private void link(Location location) {
+            location.slabPrev = null;
+            location.slabNext = head;
+            if (head != null) {
+                head.slabPrev = location;
+            }
+            head = location;
+            liveBytes += location.recordSize();
+        }
+
+        private void unlink(Location location) {
+            if (location.slabPrev == null) {
+                head = location.slabNext;
+            } else {
+                location.slabPrev.slabNext = location.slabNext;
+            }
+            if (location.slabNext != null) {
+                location.slabNext.slabPrev = location.slabPrev;
+            }
+            location.slabPrev = null;
+            location.slabNext = null;
+            liveBytes -= location.recordSize();
+        }
+
+        private void reset() {
+            writeOffset = 0;
+            liveBytes = 0;
+            head = null;
+        }
+    }
+
+    /**
+     * 记录在内存块中的位置
+     */
+    private final class Location extends TimingWheel.Node<K> {
+        private Slab slab;
+        private int offset;
+        private final int keyLength;
+        private final int valueLength;
+        private Location slabPrev;
+        private Location slabNext;
+
+        private Location(K key, long deadline, Slab slab, int offset, int keyLength, int valueLength) {
+            super(key, deadline);
+            this.slab = slab;
+            this.offset = offset;
+            this.keyLength = keyLength;
+            this.valueLength = valueLength;
+        }
+
+        private int recordSize() {
+            return HEADER + keyLength + valueLength;
+        }
+    }
+}
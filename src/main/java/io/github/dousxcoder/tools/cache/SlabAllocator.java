@@ -0,0 +1,45 @@
+package io.github.dousxcoder.tools.cache;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * {@link OffHeapExpiryCache}的内存块分配方式
+ *
+ * @author dousx
+ */
+interface SlabAllocator extends AutoCloseable {
+
+    /**
+     * 分配内存块，同一个id只会分配一次，之后由缓存循环复用
+     *
+     * @param id       内存块编号
+     * @param capacity 字节数
+     * @return {@link ByteBuffer}
+     * @throws IOException 分配失败
+     */
+    ByteBuffer allocate(int id, int capacity) throws IOException;
+
+    /**
+     * 释放所有内存块
+     *
+     * @throws IOException 释放失败
+     */
+    @Override
+    void close() throws IOException;
+
+    /**
+     * 堆外直接内存
+     */
+    SlabAllocator DIRECT = new SlabAllocator() {
+        @Override
+        public ByteBuffer allocate(int id, int capacity) {
+            return ByteBuffer.allocateDirect(capacity);
+        }
+
+        @Override
+        public void close() {
+            // DirectByteBuffer不再被引用后由GC回收
+        }
+    };
+}
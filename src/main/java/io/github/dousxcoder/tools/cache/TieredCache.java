@@ -0,0 +1,156 @@
+package io.github.dousxcoder.tools.cache;
+
+import cn.hutool.log.Log;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalNotification;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * 两级缓存
+ * <br>
+ * <ul>
+ *     <li>一级为堆内{@link MemoryCache}，容量满被淘汰的数据降级写入二级</li>
+ *     <li>二级为本地磁盘内存映射文件({@link OffHeapExpiryCache#mappedFile})，只追加写入，过期数据由定时任务压缩回收</li>
+ *     <li>一级未命中时先查二级，命中后提升回一级并从二级删除；二级也未命中才调用{@link MemoryCacheLoader}</li>
+ * </ul>
+ * 一级过期、删除、覆盖的数据不会降级；二级的有效期从降级时开始计算
+ * <br>
+ * 降级在触发一级淘汰的写线程中同步执行(序列化并写入映射文件)，一级容量满后每次写入都会多出这部分耗时；
+ * 同步执行保证降级与之后的写入、删除不会乱序，不会把已删除或被覆盖的旧值留在二级
+ *
+ * @author dousx
+ */
+public class TieredCache<K, V> implements AutoCloseable {
+    private static final Log log = Log.get(TieredCache.class);
+
+    /**
+     * 默认段文件大小 16M
+     */
+    private static final int DEFAULT_SEGMENT_SIZE = 16 << 20;
+
+    private final MemoryCache<K, V> l1;
+    private final OffHeapExpiryCache<K, V> l2;
+    private final MemoryCacheLoader<K, V> loader;
+
+    /**
+     * @param l1Builder  一级缓存配置
+     * @param directory  二级缓存段文件目录
+     * @param diskBytes  二级缓存磁盘空间上限(字节)
+     * @param l2Expiry   二级缓存有效期 毫秒
+     * @param keyCodec   key序列化
+     * @param valueCodec value序列化
+     * @throws IOException 创建目录失败
+     */
+    public TieredCache(MemoryCache.Builder<K, V> l1Builder, Path directory, long diskBytes, long l2Expiry,
+                       CacheCodec<K> keyCodec, CacheCodec<V> valueCodec) throws IOException {
+        this(l1Builder, directory, diskBytes, l2Expiry, keyCodec, valueCodec, null);
+    }
+
+    /**
+     * @param l1Builder  一级缓存配置(会覆盖其removalListener)
+     * @param directory  二级缓存段文件目录
+     * @param diskBytes  二级缓存磁盘空间上限(字节)
+     * @param l2Expiry   二级缓存有效期 毫秒
+     * @param keyCodec   key序列化
+     * @param valueCodec value序列化
+     * @param loader     两级都未命中时的数据加载，为null时返回null
+     * @throws IOException 创建目录失败
+     */
+    public TieredCache(MemoryCache.Builder<K, V> l1Builder, Path directory, long diskBytes, long l2Expiry,
+                       CacheCodec<K> keyCodec, CacheCodec<V> valueCodec, MemoryCacheLoader<K, V> loader) throws IOException {
+        // 至少4个段文件，压缩时才有空闲段可用
+        int segmentSize = (int) Math.min(DEFAULT_SEGMENT_SIZE, Math.max(1, diskBytes / 4));
+        this.l2 = OffHeapExpiryCache.mappedFile(directory, diskBytes, segmentSize, l2Expiry, keyCodec, valueCodec);
+        this.loader = loader;
+        // 一级未命中时由一级的单飞加载先查二级，同一个key并发未命中只会读一次磁盘
+        this.l1 = l1Builder.removalListener(this::demote).build(this::loadFromL2);
+    }
+
+    /**
+     * @param key key
+     * @return value，两级都未命中且没有loader时返回null
+     */
+    public V get(K key) {
+        return l1.get(key);
+    }
+
+    /**
+     * 删除二级中的旧数据，再写入一级
+     * <br>
+     * 先删除二级：新值写入一级后可能立即被淘汰降级到二级，之后再删除二级会使新值两级都不存在
+     *
+     * @param key   key
+     * @param value value
+     */
+    public void put(K key, V value) {
+        l2.remove(key);
+        l1.put(key, value);
+    }
+
+    public void invalidate(K key) {
+        l1.invalidate(key);
+        l2.remove(key);
+    }
+
+    public void invalidateAll() {
+        l1.invalidateAll();
+        l2.clear();
+    }
+
+    /**
+     * @return 一级缓存数量
+     */
+    public long l1Size() {
+        return l1.size();
+    }
+
+    /**
+     * @return 二级缓存数量(可能包含尚未清理的过期数据)
+     */
+    public int l2Size() {
+        return l2.size();
+    }
+
+    /**
+     * @return 二级缓存命中统计
+     */
+    public CacheStats l2Stats() {
+        return l2.stats();
+    }
+
+    @Override
+    public void close() {
+        l1.close();
+        l2.close();
+    }
+
+    private V loadFromL2(K key) throws Exception {
+        V value = l2.get(key);
+        if (value != null) {
+            // 提升到一级后二级不再保留
+            l2.remove(key);
+            return value;
+        }
+        return loader == null ? null : loader.load(key);
+    }
+
+    private void demote(RemovalNotification<K, V> notification) {
+        if (notification.getCause() != RemovalCause.SIZE) {
+            return;
+        }
+        K key = notification.getKey();
+        V value = notification.getValue();
+        if (key == null || value == null) {
+            return;
+        }
+        try {
+            l2.put(key, value);
+        } catch (RuntimeException e) {
+            // 降级失败只影响命中率
+            log.warn("一级缓存淘汰数据写入二级失败,key {}", key, e);
+        }
+    }
+}
@@ -0,0 +1,252 @@
+package io.github.dousxcoder.tools.cache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * 分层时间轮(非线程安全，由调用方加锁)
+ * <br>
+ * 每一层64个槽，第0层一个槽跨度{@code 2^6}毫秒，每往上一层跨度放大64倍。
+ * 节点按剩余时间放入能容纳它的最低一层，时间推进时只访问走过的槽，
+ * 未到期的节点降级到更低的层，因此每个节点的过期处理均摊O(1)，不需要扫描全部数据。
+ *
+ * @author dousx
+ */
+class TimingWheel<K> {
+
+    /**
+     * 每层槽的数量
+     */
+    private static final int BUCKETS = 64;
+
+    /**
+     * 每层单个槽跨度(毫秒)的位移
+     * <br>
+     * 64ms、4s、4.3m、4.6h、12d
+     */
+    private static final int[] SHIFT = {6, 12, 18, 24, 30};
+
+    /**
+     * 每层的槽，槽为带哨兵的双向循环链表
+     */
+    private final Node<K>[][] wheel;
+
+    /**
+     * 上一次推进到的时间
+     */
+    private long time;
+
+    /**
+     * 已调度的节点数量
+     */
+    private int size;
+
+    @SuppressWarnings("unchecked")
+    TimingWheel(long now) {
+        this.time = now;
+        this.wheel = (Node<K>[][]) new Node<?>[SHIFT.length][BUCKETS];
+        for (Node<K>[] buckets : wheel) {
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = new Node<>();
+            }
+        }
+    }
+
+    /**
+     * 调度节点，节点已调度时先移除再按当前过期时间重新放入
+     *
+     * @param node 节点
+     */
+    void schedule(Node<K> node) {
+        if (node.isLinked()) {
+            unlink(node);
+        } else {
+            size++;
+        }
+        link(findBucket(node.getDeadline()), node);
+    }
+
+    /**
+     * 取消调度
+     *
+     * @param node 节点
+     */
+    void deschedule(Node<K> node) {
+        if (node.isLinked()) {
+            unlink(node);
+            size--;
+        }
+    }
+
+    /**
+     * 推进时间轮，移除并回调所有已过期的节点
+     * <br>
+     * 回调在所有槽遍历完成后执行，回调中可以调度或取消任意节点
+     *
+     * @param now       当前时间(毫秒)
+     * @param onExpired 过期回调
+     */
+    void advance(long now, Consumer<Node<K>> onExpired) {
+        long previousTime = time;
+        if (now <= previousTime) {
+            return;
+        }
+        time = now;
+        List<Node<K>> expired = new ArrayList<>();
+        for (int level = 0; level < SHIFT.length; level++) {
+            long previousTicks = previousTime >>> SHIFT[level];
+            long currentTicks = now >>> SHIFT[level];
+            long delta = currentTicks - previousTicks;
+            if (delta <= 0) {
+                break;
+            }
+            expire(level, previousTicks, delta, now, expired);
+        }
+        for (Node<K> node : expired) {
+            onExpired.accept(node);
+        }
+    }
+
+    /**
+     * 已调度的节点数量
+     *
+     * @return 节点数量
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * 清空时间轮
+     */
+    void clear() {
+        for (Node<K>[] buckets : wheel) {
+            for (Node<K> sentinel : buckets) {
+                Node<K> node = sentinel.next;
+                while (node != sentinel) {
+                    Node<K> next = node.next;
+                    node.prev = null;
+                    node.next = null;
+                    node = next;
+                }
+                sentinel.prev = sentinel;
+                sentinel.next = sentinel;
+            }
+        }
+        size = 0;
+    }
+
+    private void expire(int level, long previousTicks, long delta, long now, List<Node<K>> expired) {
+        Node<K>[] buckets = wheel[level];
+        int start = (int) (previousTicks & (BUCKETS - 1));
+        int steps = (int) Math.min(delta + 1, BUCKETS);
+        for (int i = 0; i < steps; i++) {
+            Node<K> sentinel = buckets[(start + i) & (BUCKETS - 1)];
+            Node<K> node = sentinel.next;
+            // 先把整个槽摘下来，避免重新调度的节点回到同一个槽造成死循环
+            sentinel.prev = sentinel;
+            sentinel.next = sentinel;
+            while (node != sentinel) {
+                Node<K> next = node.next;
+                node.prev = null;
+                node.next = null;
+                if (node.isExpired(now)) {
+                    size--;
+                    expired.add(node);
+                } else {
+                    link(findBucket(node.getDeadline()), node);
+                }
+                node = next;
+            }
+        }
+    }
+
+    private Node<K> findBucket(long deadline) {
+        // 已过期的节点放到当前槽，下一次推进即可处理
+        deadline = Math.max(deadline, time);
+        long duration = deadline - time;
+        int top = SHIFT.length - 1;
+        for (int level = 0; level < top; level++) {
+            if (duration < (1L << SHIFT[level + 1])) {
+                return wheel[level][(int) ((deadline >>> SHIFT[level]) & (BUCKETS - 1))];
+            }
+        }
+        return wheel[top][(int) ((deadline >>> SHIFT[top]) & (BUCKETS - 1))];
+    }
+
+    private static <K> void link(Node<K> sentinel, Node<K> node) {
+        node.prev = sentinel.prev;
+        node.next = sentinel;
+        sentinel.prev.next = node;
+        sentinel.prev = node;
+    }
+
+    private static <K> void unlink(Node<K> node) {
+        node.prev.next = node.next;
+        node.next.prev = node.prev;
+        node.prev = null;
+        node.next = null;
+    }
+
+    /**
+     * 时间轮节点
+     *
+     * @param <K> key
+     */
+    static class Node<K> {
+        private final K key;
+        private volatile long deadline;
+        private volatile boolean retired;
+        private Node<K> prev;
+        private Node<K> next;
+
+        Node(K key, long deadline) {
+            this.key = key;
+            this.deadline = deadline;
+        }
+
+        /**
+         * 哨兵节点，自成环
+         */
+        private Node() {
+            this.key = null;
+            this.prev = this;
+            this.next = this;
+        }
+
+        K getKey() {
+            return key;
+        }
+
+        /**
+         * @return 过期时间(毫秒)
+         */
+        long getDeadline() {
+            return deadline;
+        }
+
+        void setDeadline(long deadline) {
+            this.deadline = deadline;
+        }
+
+        boolean isExpired(long now) {
+            return now > deadline;
+        }
+
+        /**
+         * 标记节点已失效(被替换或删除)，不再参与调度
+         */
+        void retire() {
+            this.retired = true;
+        }
+
+        boolean isRetired() {
+            return retired;
+        }
+
+        boolean isLinked() {
+            return next != null;
+        }
+    }
+}
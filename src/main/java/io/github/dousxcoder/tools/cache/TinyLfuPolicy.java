@@ -0,0 +1,285 @@
+package io.github.dousxcoder.tools.cache;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * W-TinyLFU淘汰策略(非线程安全，由调用方加锁)
+ * <br>
+ * 新写入的key先进入容量1%的窗口LRU，窗口溢出的key进入主区的试用段，
+ * 与试用段最久未访问的key比较{@link FrequencySketch}估算的频率，频率低的一方被淘汰。
+ * 主区按SLRU划分试用段(20%)和保护段(80%)，试用段再次被访问时晋升到保护段。
+ * 一次性扫描的key频率很低，不会把热点key挤出缓存。
+ *
+ * @author dousx
+ */
+final class TinyLfuPolicy<K> {
+
+    private static final int WINDOW = 0;
+    private static final int PROBATION = 1;
+    private static final int PROTECTED = 2;
+
+    private final Map<K, PolicyNode<K>> nodes = new HashMap<>();
+    private final FrequencySketch<K> sketch;
+    private final AccessOrderDeque<K> window = new AccessOrderDeque<>();
+    private final AccessOrderDeque<K> probation = new AccessOrderDeque<>();
+    private final AccessOrderDeque<K> protectedDeque = new AccessOrderDeque<>();
+
+    /**
+     * 最大数量/权重
+     */
+    private final long maximum;
+    private final long windowMaximum;
+    private final long protectedMaximum;
+
+    private long weightedSize;
+    private long windowWeightedSize;
+    private long protectedWeightedSize;
+
+    /**
+     * @param maximum         最大数量/权重
+     * @param initialCapacity 预计的key数量，{@link FrequencySketch}按此初始化，之后随key数量增长
+     */
+    TinyLfuPolicy(long maximum, int initialCapacity) {
+        this.maximum = maximum;
+        this.windowMaximum = Math.max(1, maximum / 100);
+        this.protectedMaximum = (long) ((maximum - windowMaximum) * 0.8);
+        // 按权重限制时maximum是权重(如字节数)而不是key数量，不能用来确定sketch大小
+        this.sketch = new FrequencySketch<>(Math.min(maximum, initialCapacity));
+    }
+
+    /**
+     * 记录一次读取(包括未命中)
+     *
+     * @param key key
+     */
+    void recordAccess(K key) {
+        sketch.increment(key);
+        PolicyNode<K> node = nodes.get(key);
+        if (node != null) {
+            onHit(node);
+        }
+    }
+
+    /**
+     * 记录一次写入
+     *
+     * @param key    key
+     * @param weight 权重
+     * @return 需要淘汰的key
+     */
+    List<K> recordWrite(K key, int weight) {
+        sketch.increment(key);
+        PolicyNode<K> node = nodes.get(key);
+        if (node == null) {
+            node = new PolicyNode<>(key, weight);
+            nodes.put(key, node);
+            sketch.ensureCapacity(nodes.size());
+            node.queue = WINDOW;
+            window.addLast(node);
+            windowWeightedSize += weight;
+            weightedSize += weight;
+        } else {
+            int delta = weight - node.weight;
+            node.weight = weight;
+            weightedSize += delta;
+            if (node.queue == WINDOW) {
+                windowWeightedSize += delta;
+            } else if (node.queue == PROTECTED) {
+                protectedWeightedSize += delta;
+            }
+            onHit(node);
+        }
+        return evict();
+    }
+
+    /**
+     * 移除key(过期、删除)
+     *
+     * @param key key
+     */
+    void remove(Object key) {
+        PolicyNode<K> node = nodes.remove(key);
+        if (node != null) {
+            unlink(node);
+        }
+    }
+
+    void clear() {
+        nodes.clear();
+        window.clear();
+        probation.clear();
+        protectedDeque.clear();
+        weightedSize = 0;
+        windowWeightedSize = 0;
+        protectedWeightedSize = 0;
+    }
+
+    /**
+     * @return 当前总权重
+     */
+    long weightedSize() {
+        return weightedSize;
+    }
+
+    private void onHit(PolicyNode<K> node) {
+        if (node.queue == WINDOW) {
+            window.moveToBack(node);
+        } else if (node.queue == PROBATION) {
+            probation.remove(node);
+            node.queue = PROTECTED;
+            protectedDeque.addLast(node);
+            protectedWeightedSize += node.weight;
+            demoteFromProtected();
+        } else {
+            protectedDeque.moveToBack(node);
+        }
+    }
+
+    private void demoteFromProtected() {
+        while (protectedWeightedSize > protectedMaximum) {
+            PolicyNode<K> demoted = protectedDeque.peekFirst();
+            if (demoted == null) {
+                return;
+            }
+            protectedDeque.remove(demoted);
+            protectedWeightedSize -= demoted.weight;
+            demoted.queue = PROBATION;
+            probation.addLast(demoted);
+        }
+    }
+
+    private List<K> evict() {
+        // 窗口溢出的key进入试用段尾部，成为候选者
+        PolicyNode<K> candidate = null;
+        while (windowWeightedSize > windowMaximum) {
+            PolicyNode<K> node = window.peekFirst();
+            if (node == null) {
+                break;
+            }
+            window.remove(node);
+            windowWeightedSize -= node.weight;
+            node.queue = PROBATION;
+            probation.addLast(node);
+            if (candidate == null) {
+                candidate = node;
+            }
+        }
+        if (weightedSize <= maximum) {
+            return Collections.emptyList();
+        }
+
+        List<K> evicted = new ArrayList<>();
+        while (weightedSize > maximum) {
+            PolicyNode<K> victim = probation.peekFirst();
+            if (victim == null) {
+                victim = protectedDeque.peekFirst() != null ? protectedDeque.peekFirst() : window.peekFirst();
+                if (victim == null) {
+                    break;
+                }
+                evicted.add(evictNode(victim));
+                continue;
+            }
+            if (candidate == null || candidate == victim) {
+                if (candidate == victim) {
+                    candidate = candidate.next;
+                }
+                evicted.add(evictNode(victim));
+                continue;
+            }
+            if (sketch.frequency(candidate.key) > sketch.frequency(victim.key)) {
+                evicted.add(evictNode(victim));
+            } else {
+                PolicyNode<K> next = candidate.next;
+                evicted.add(evictNode(candidate));
+                candidate = next;
+            }
+        }
+        return evicted;
+    }
+
+    private K evictNode(PolicyNode<K> node) {
+        nodes.remove(node.key);
+        unlink(node);
+        return node.key;
+    }
+
+    private void unlink(PolicyNode<K> node) {
+        weightedSize -= node.weight;
+        if (node.queue == WINDOW) {
+            window.remove(node);
+            windowWeightedSize -= node.weight;
+        } else if (node.queue == PROBATION) {
+            probation.remove(node);
+        } else {
+            protectedDeque.remove(node);
+            protectedWeightedSize -= node.weight;
+        }
+    }
+
+    private static final class PolicyNode<K> {
+        private final K key;
+        private int weight;
+        private int queue;
+        private PolicyNode<K> prev;
+        private PolicyNode<K> next;
+
+        private PolicyNode(K key, int weight) {
+            this.key = key;
+            this.weight = weight;
+        }
+    }
+
+    /**
+     * 按访问顺序排列的双向链表，头部为最久未访问
+     */
+    private static final class AccessOrderDeque<K> {
+        private PolicyNode<K> first;
+        private PolicyNode<K> last;
+
+        PolicyNode<K> peekFirst() {
+            return first;
+        }
+
+        void addLast(PolicyNode<K> node) {
+            node.prev = last;
+            node.next = null;
+            if (last == null) {
+                first = node;
+            } else {
+                last.next = node;
+            }
+            last = node;
+        }
+
+        void remove(PolicyNode<K> node) {
+            if (node.prev == null) {
+                first = node.next;
+            } else {
+                node.prev.next = node.next;
+            }
+            if (node.next == null) {
+                last = node.prev;
+            } else {
+                node.next.prev = node.prev;
+            }
+            node.prev = null;
+            node.next = null;
+        }
+
+        void moveToBack(PolicyNode<K> node) {
+            if (node != last) {
+                remove(node);
+                addLast(node);
+            }
+        }
+
+        void clear() {
+            first = null;
+            last = null;
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package io.github.dousxcoder.tools.cache;
+
+import cn.hutool.log.Log;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * UDP传输，每条消息一个数据报，逐个发送给配置的节点
+ * <br>
+ * UDP不保证送达和顺序，主要用于本机多进程测试({@link UdpInvalidationTransport#loopback(int, int...)})
+ *
+ * @author dousx
+ */
+public class UdpInvalidationTransport implements InvalidationTransport {
+    private static final Log log = Log.get(UdpInvalidationTransport.class);
+
+    /**
+     * 单个数据报的最大负载(65507)留出余量
+     */
+    private static final int MAX_MESSAGE_SIZE = 60 << 10;
+
+    private final DatagramSocket socket;
+    private final List<InetSocketAddress> peers;
+    private final List<Consumer<byte[]>> receivers = new CopyOnWriteArrayList<>();
+    private volatile boolean closed;
+
+    /**
+     * @param bindAddress 本地监听地址
+     * @param peers       其他节点地址
+     * @throws SocketException 端口绑定失败
+     */
+    public UdpInvalidationTransport(InetSocketAddress bindAddress, List<InetSocketAddress> peers) throws SocketException {
+        this.socket = new DatagramSocket(bindAddress);
+        this.peers = new ArrayList<>(peers);
+        new CacheMaintenanceScheduler.DaemonThreadFactory("cache-invalidation-udp-")
+                .newThread(this::receiveLoop)
+                .start();
+    }
+
+    /**
+     * 本机回环地址
+     *
+     * @param localPort 本地端口
+     * @param peerPorts 其他节点端口
+     * @return {@link UdpInvalidationTransport}
+     * @throws SocketException 端口绑定失败
+     */
+    public static UdpInvalidationTransport loopback(int localPort, int... peerPorts) throws SocketException {
+        InetAddress loopback = InetAddress.getLoopbackAddress();
+        List<InetSocketAddress> peers = new ArrayList<>(peerPorts.length);
+        Arrays.stream(peerPorts).forEach(port -> peers.add(new InetSocketAddress(loopback, port)));
+        return new UdpInvalidationTransport(new InetSocketAddress(loopback, localPort), peers);
+    }
+
+    /**
+     * @return 本地端口(绑定0时为系统分配的端口)
+     */
+    public int getLocalPort() {
+        return socket.getLocalPort();
+    }
+
+    @Override
+    public int maxMessageSize() {
+        return MAX_MESSAGE_SIZE;
+    }
+
+    @Override
+    public void send(byte[] message) throws IOException {
+        if (message.length > MAX_MESSAGE_SIZE) {
+            throw new IllegalArgumentException("message size " + message.length + " exceeds " + MAX_MESSAGE_SIZE);
+        }
+        for (InetSocketAddress peer : peers) {
+            socket.send(new DatagramPacket(message, message.length, peer));
+        }
+    }
+
+    @Override
+    public void subscribe(Consumer<byte[]> receiver) {
+        receivers.add(receiver);
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        // 关闭socket使receive()抛出异常，接收线程退出
+        socket.close();
+    }
+
+    private void receiveLoop() {
+        byte[] buffer = new byte[MAX_MESSAGE_SIZE];
+        DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+        while (!closed) {
+            try {
+                packet.setLength(buffer.length);
+                socket.receive(packet);
+                byte[] message = Arrays.copyOfRange(buffer, packet.getOffset(), packet.getOffset() + packet.getLength());
+                for (Consumer<byte[]> receiver : receivers) {
+                    receiver.accept(message);
+                }
+            } catch (IOException e) {
+                if (!closed) {
+                    log.warn("接收失效消息异常", e);
+                }
+            } catch (RuntimeException e) {
+                log.warn("处理失效消息异常", e);
+            }
+        }
+    }
+}
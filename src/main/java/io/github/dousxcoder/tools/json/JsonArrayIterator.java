@@ -0,0 +1,142 @@
+package io.github.dousxcoder.tools.json;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * 逐个读取json数组的元素
+ * <br>
+ * <ul>
+ *     <li>每次{@link JsonArrayIterator#next()}只从输入流读取并解析一个元素，内存占用与数组长度无关</li>
+ *     <li>读到数组结尾时自动关闭；提前结束时必须调用{@link JsonArrayIterator#close()}(或关闭{@link JsonArrayIterator#stream()})，
+ *     同时关闭输入流</li>
+ *     <li>读取或解析失败时抛出{@link UncheckedIOException}</li>
+ * </ul>
+ * 非线程安全
+ *
+ * @author dousx
+ */
+public final class JsonArrayIterator<T> implements Iterator<T>, Closeable {
+
+    private final ObjectMapper mapper;
+    private final JavaType elementType;
+    private final JsonParser parser;
+
+    /**
+     * 下一个元素的第一个token，未读取时为null
+     */
+    private JsonToken pending;
+    private boolean finished;
+
+    /**
+     * @param mapper      ObjectMapper
+     * @param in          输入流，关闭迭代器时一并关闭
+     * @param elementType 元素类型
+     * @throws IOException 输入不是json数组
+     */
+    JsonArrayIterator(ObjectMapper mapper, InputStream in, JavaType elementType) throws IOException {
+        this.mapper = mapper;
+        this.elementType = elementType;
+        this.parser = mapper.getFactory().createParser(in);
+        try {
+            JsonToken token = parser.nextToken();
+            if (token != JsonToken.START_ARRAY) {
+                throw JsonMappingException.from(parser, "expected '[' but was " + token);
+            }
+        } catch (IOException | RuntimeException e) {
+            parser.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (finished) {
+            return false;
+        }
+        if (pending != null) {
+            return true;
+        }
+        try {
+            JsonToken token = parser.nextToken();
+            if (token == null) {
+                throw JsonMappingException.from(parser, "unexpected end of array");
+            }
+            if (token == JsonToken.END_ARRAY) {
+                close();
+                return false;
+            }
+            pending = token;
+            return true;
+        } catch (IOException e) {
+            closeQuietly(e);
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        pending = null;
+        try {
+            return mapper.readValue(parser, elementType);
+        } catch (IOException e) {
+            closeQuietly(e);
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 顺序流，关闭流时关闭迭代器
+     *
+     * @return {@link Stream}
+     */
+    public Stream<T> stream() {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED), false)
+                .onClose(() -> {
+                    try {
+                        close();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+    }
+
+    /**
+     * 关闭解析器和输入流，可重复调用
+     *
+     * @throws IOException 关闭输入流失败
+     */
+    @Override
+    public void close() throws IOException {
+        if (!finished) {
+            finished = true;
+            pending = null;
+            parser.close();
+        }
+    }
+
+    private void closeQuietly(IOException cause) {
+        try {
+            close();
+        } catch (IOException e) {
+            cause.addSuppressed(e);
+        }
+    }
+}
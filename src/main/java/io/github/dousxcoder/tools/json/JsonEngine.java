@@ -0,0 +1,21 @@
+package io.github.dousxcoder.tools.json;
+
+/**
+ * {@link JsonUtilPool}使用的json库，按声明顺序依次尝试
+ *
+ * @author dousx
+ */
+public enum JsonEngine {
+    /**
+     * com.alibaba.fastjson2
+     */
+    FASTJSON2,
+    /**
+     * com.fasterxml.jackson.databind.ObjectMapper
+     */
+    JACKSON,
+    /**
+     * com.google.gson.Gson
+     */
+    GSON
+}
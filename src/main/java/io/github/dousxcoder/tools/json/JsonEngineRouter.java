@@ -0,0 +1,207 @@
+package io.github.dousxcoder.tools.json;
+
+import cn.hutool.log.Log;
+import io.github.dousxcoder.tools.ex.CommonException;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 按类型记住可用的json库
+ * <br>
+ * <ul>
+ *     <li>每个类型(通过{@link ClassValue}关联，不阻止类卸载)记录当前使用的{@link JsonEngine}，之后直接使用，
+ *     不再每次都先让前面的库抛出异常</li>
+ *     <li>当前库连续{@link JsonEngineRouter#DEMOTE_AFTER}次失败、且每次都由后面的库处理成功时才改用后面的库；
+ *     单次失败(如个别格式有问题的输入)不改变路由，全部库都失败的调用不计入</li>
+ *     <li>降级后每隔{@link JsonEngineRouter#REPROBE_MILLIS}毫秒重新尝试一次首选库(熔断半开)，成功则恢复</li>
+ *     <li>记录每个类型的降级次数和各个库的失败次数</li>
+ * </ul>
+ * 连续失败次数可通过系统属性{@code dousx.json.demote-after}指定，默认3次；
+ * 重试间隔可通过系统属性{@code dousx.json.reprobe-millis}指定，默认60秒
+ *
+ * @author dousx
+ */
+public final class JsonEngineRouter {
+    private static final Log log = Log.get(JsonEngineRouter.class);
+
+    private static final JsonEngine[] CHAIN = JsonEngine.values();
+    private static final JsonEngine PRIMARY = CHAIN[0];
+
+    /**
+     * 首选库失败后重新尝试的间隔 毫秒
+     */
+    public static final long REPROBE_MILLIS = Long.getLong("dousx.json.reprobe-millis", 60_000L);
+
+    /**
+     * 当前库连续失败多少次后改用后面的库
+     */
+    public static final int DEMOTE_AFTER = Math.max(1, Integer.getInteger("dousx.json.demote-after", 3));
+
+    private final String action;
+    private final long reprobeNanos = TimeUnit.MILLISECONDS.toNanos(REPROBE_MILLIS);
+
+    private final ClassValue<Route> routes = new ClassValue<Route>() {
+        @Override
+        protected Route computeValue(Class<?> type) {
+            return new Route();
+        }
+    };
+
+    /**
+     * 发生过降级或全部库都失败过的类型，key为类名，不持有Class引用
+     */
+    private final Map<String, Route> degraded = new ConcurrentHashMap<>();
+
+    /**
+     * @param action 日志中的操作名称
+     */
+    JsonEngineRouter(String action) {
+        this.action = action;
+    }
+
+    /**
+     * 从该类型的首选库开始依次尝试
+     *
+     * @param type 类型
+     * @param call 使用指定的库执行
+     * @param <R>  结果类型
+     * @return 结果
+     */
+    <R> R call(Class<?> type, EngineCall<R> call) {
+        Route route = routes.get(type);
+        JsonEngine preferred = route.preferred;
+        JsonEngine first = preferred;
+        if (preferred != PRIMARY) {
+            long now = System.nanoTime();
+            if (now - route.probeAt >= 0) {
+                // 半开：放行一次首选库，失败后等待下一个周期
+                route.probeAt = now + reprobeNanos;
+                first = PRIMARY;
+            }
+        }
+        Throwable last = null;
+        boolean preferredFailed = false;
+        for (int i = -1; i < CHAIN.length; i++) {
+            JsonEngine engine = i < 0 ? first : CHAIN[i];
+            if (i >= 0 && engine == first) {
+                continue;
+            }
+            try {
+                R result = call.apply(engine);
+                if (last != null) {
+                    route.fallbacks.increment();
+                }
+                if (engine == preferred) {
+                    route.resetMisses();
+                } else if (engine == PRIMARY) {
+                    switchTo(type, route, PRIMARY, null);
+                } else if (preferredFailed && route.misses.incrementAndGet() >= DEMOTE_AFTER) {
+                    switchTo(type, route, engine, last);
+                }
+                return result;
+            } catch (Throwable e) {
+                last = e;
+                preferredFailed |= engine == preferred;
+                route.failures.get(engine).increment();
+                log.debug("{}失败[{}],type {} - {}", action, engine, type.getName(), e.getMessage());
+            }
+        }
+        route.fallbacks.increment();
+        degraded.putIfAbsent(type.getName(), route);
+        if (last instanceof RuntimeException) {
+            throw (RuntimeException) last;
+        }
+        if (last instanceof Error) {
+            throw (Error) last;
+        }
+        throw new CommonException(last);
+    }
+
+    private void switchTo(Class<?> type, Route route, JsonEngine engine, Throwable cause) {
+        route.preferred = engine;
+        route.resetMisses();
+        if (engine == PRIMARY) {
+            log.info("{}恢复使用[{}],type {}", action, engine, type.getName());
+            return;
+        }
+        route.probeAt = System.nanoTime() + reprobeNanos;
+        degraded.put(type.getName(), route);
+        log.warn("{}连续{}次失败,改用[{}],type {} - {}", action, DEMOTE_AFTER, engine, type.getName(),
+                cause == null ? null : cause.getMessage());
+    }
+
+    /**
+     * @param type 类型
+     * @return 该类型当前使用的库
+     */
+    public JsonEngine preferredEngine(Class<?> type) {
+        return routes.get(type).preferred;
+    }
+
+    /**
+     * @param type 类型
+     * @return 首选库失败、由后面的库处理(或全部失败)的次数
+     */
+    public long fallbackCount(Class<?> type) {
+        return routes.get(type).fallbacks.sum();
+    }
+
+    /**
+     * @param type   类型
+     * @param engine 库
+     * @return 该库处理该类型失败的次数
+     */
+    public long failureCount(Class<?> type, JsonEngine engine) {
+        return routes.get(type).failures.get(engine).sum();
+    }
+
+    /**
+     * @return 发生过降级或全部库都失败过的类型(类名)及降级次数
+     */
+    public Map<String, Long> fallbackCounts() {
+        Map<String, Long> result = new HashMap<>(degraded.size());
+        degraded.forEach((name, route) -> result.put(name, route.fallbacks.sum()));
+        return Collections.unmodifiableMap(result);
+    }
+
+    /**
+     * 使用指定的库执行
+     *
+     * @param <R> 结果类型
+     */
+    @FunctionalInterface
+    interface EngineCall<R> {
+        R apply(JsonEngine engine) throws Exception;
+    }
+
+    private static final class Route {
+        private volatile JsonEngine preferred = PRIMARY;
+        private volatile long probeAt;
+        /**
+         * 当前库连续失败(由后面的库处理成功)的次数
+         */
+        private final AtomicInteger misses = new AtomicInteger();
+        private final LongAdder fallbacks = new LongAdder();
+        private final Map<JsonEngine, LongAdder> failures = new EnumMap<>(JsonEngine.class);
+
+        private Route() {
+            for (JsonEngine engine : CHAIN) {
+                failures.put(engine, new LongAdder());
+            }
+        }
+
+        private void resetMisses() {
+            // 绝大多数调用没有失败，先读再写，避免每次成功都写共享变量
+            if (misses.get() != 0) {
+                misses.set(0);
+            }
+        }
+    }
+}
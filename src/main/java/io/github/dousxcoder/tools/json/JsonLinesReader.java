@@ -0,0 +1,331 @@
+package io.github.dousxcoder.tools.json;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
+
+/**
+ * 并行读取JSON Lines(每行一个json)文件
+ * <br>
+ * <ul>
+ *     <li>文件按{@link Builder#chunkSize(int)}切分为以换行结尾的块，每块单独内存映射，在{@link ForkJoinPool}中并行解析</li>
+ *     <li>每行通过{@link JsonUtilPool#parseObject(ByteBuffer, Class)}解析，失败的行记录为{@link LineError}，不影响其他行</li>
+ *     <li>有序模式按文件顺序输出；无序模式每块解析完立即输出，回调可能在多个线程中同时执行</li>
+ *     <li>同时解析的块数不超过并行度的2倍，内存占用与文件大小无关</li>
+ * </ul>
+ * 空行跳过，支持\r\n换行
+ *
+ * @author dousx
+ */
+public final class JsonLinesReader<T> {
+
+    private static final int SCAN_WINDOW = 8 << 10;
+
+    private final Class<T> clazz;
+    private final boolean ordered;
+    private final int chunkSize;
+    private final ForkJoinPool pool;
+
+    private JsonLinesReader(Builder<T> builder) {
+        this.clazz = builder.clazz;
+        this.ordered = builder.ordered;
+        this.chunkSize = builder.chunkSize;
+        this.pool = builder.pool;
+    }
+
+    /**
+     * @param clazz 每行的类型
+     * @param <T>   t
+     * @return {@link Builder}
+     */
+    public static <T> Builder<T> builder(Class<T> clazz) {
+        return new Builder<>(clazz);
+    }
+
+    /**
+     * 读取全部行
+     *
+     * @param file 文件
+     * @return 解析成功的对象(有序模式下按行顺序)和失败的行
+     * @throws IOException 读取失败
+     */
+    public Result<T> read(Path file) throws IOException {
+        // 两种模式都先收集到各块的values，在调用线程中拼接，解析线程之间不共享list
+        List<T> values = new ArrayList<>();
+        List<LineError> errors = process(file, null, values::addAll);
+        return new Result<>(values, errors);
+    }
+
+    /**
+     * 逐个处理解析成功的对象
+     * <br>
+     * 有序模式下回调在调用线程中按行顺序执行；无序模式下在解析线程中执行，需要线程安全
+     * <br>
+     * 回调抛出的异常不记录为{@link LineError}，直接抛给调用方
+     *
+     * @param file     文件
+     * @param consumer 回调
+     * @return 失败的行，按行号排序
+     * @throws IOException 读取失败
+     */
+    public List<LineError> forEach(Path file, Consumer<? super T> consumer) throws IOException {
+        if (ordered) {
+            return process(file, null, values -> values.forEach(consumer));
+        }
+        return process(file, consumer, values -> {
+        });
+    }
+
+    /**
+     * @param file     文件
+     * @param consumer 在解析线程中逐个处理，为null时收集到块中
+     * @param onChunk  在调用线程中按块顺序处理收集到的对象
+     * @return 失败的行
+     */
+    private List<LineError> process(Path file, Consumer<? super T> consumer, Consumer<List<T>> onChunk) throws IOException {
+        int window = Math.max(1, pool.getParallelism() * 2);
+        Deque<ForkJoinTask<Chunk<T>>> inFlight = new ArrayDeque<>(window);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            List<Chunk<T>> done = new ArrayList<>();
+            long position = 0;
+            while (position < size || !inFlight.isEmpty()) {
+                while (position < size && inFlight.size() < window) {
+                    long end = lineEnd(channel, Math.min(size, position + chunkSize), size);
+                    Chunk<T> chunk = new Chunk<>(channel.map(FileChannel.MapMode.READ_ONLY, position, end - position), position);
+                    inFlight.addLast(pool.submit(() -> parse(chunk, consumer)));
+                    position = end;
+                }
+                Chunk<T> chunk = inFlight.removeFirst().join();
+                onChunk.accept(chunk.values);
+                chunk.values = null;
+                done.add(chunk);
+            }
+            return errors(done);
+        } finally {
+            // 解析或回调失败时取消剩余的块，forEach返回后不再调用回调
+            inFlight.forEach(task -> task.cancel(false));
+        }
+    }
+
+    /**
+     * 从from开始找到下一个换行之后的位置
+     */
+    private static long lineEnd(FileChannel channel, long from, long size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(SCAN_WINDOW);
+        long position = from;
+        while (position < size) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+        return size;
+    }
+
+    private Chunk<T> parse(Chunk<T> chunk, Consumer<? super T> consumer) {
+        MappedByteBuffer data = chunk.data;
+        int limit = data.limit();
+        int start = 0;
+        int line = 0;
+        while (start < limit) {
+            int end = start;
+            while (end < limit && data.get(end) != '\n') {
+                end++;
+            }
+            int contentEnd = end > start && data.get(end - 1) == '\r' ? end - 1 : end;
+            if (!isBlank(data, start, contentEnd)) {
+                ByteBuffer json = data.duplicate();
+                json.limit(contentEnd).position(start);
+                T value = null;
+                boolean parsed = false;
+                try {
+                    value = JsonUtilPool.parseObject(json, clazz);
+                    parsed = true;
+                } catch (RuntimeException e) {
+                    chunk.errors.add(new LineError(line, chunk.offset + start, e));
+                }
+                // 回调抛出的异常不属于解析失败，直接抛给调用方
+                if (parsed) {
+                    if (consumer == null) {
+                        chunk.values.add(value);
+                    } else {
+                        consumer.accept(value);
+                    }
+                }
+            }
+            line++;
+            start = end + 1;
+        }
+        chunk.lines = line;
+        chunk.data = null;
+        return chunk;
+    }
+
+    private static boolean isBlank(ByteBuffer data, int start, int end) {
+        for (int i = start; i < end; i++) {
+            byte b = data.get(i);
+            if (b != ' ' && b != '\t') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 块内行号转换为文件行号(从1开始)
+     */
+    private static <T> List<LineError> errors(List<Chunk<T>> chunks) {
+        List<LineError> errors = new ArrayList<>();
+        long firstLine = 1;
+        for (Chunk<T> chunk : chunks) {
+            for (LineError error : chunk.errors) {
+                errors.add(new LineError(firstLine + error.lineNumber, error.byteOffset, error.cause));
+            }
+            firstLine += chunk.lines;
+        }
+        return errors;
+    }
+
+    private static final class Chunk<T> {
+        private MappedByteBuffer data;
+        private final long offset;
+        private List<T> values = new ArrayList<>();
+        private final List<LineError> errors = new ArrayList<>(0);
+        private int lines;
+
+        private Chunk(MappedByteBuffer data, long offset) {
+            this.data = data;
+            this.offset = offset;
+        }
+    }
+
+    /**
+     * 解析失败的行
+     */
+    public static final class LineError {
+        private final long lineNumber;
+        private final long byteOffset;
+        private final RuntimeException cause;
+
+        private LineError(long lineNumber, long byteOffset, RuntimeException cause) {
+            this.lineNumber = lineNumber;
+            this.byteOffset = byteOffset;
+            this.cause = cause;
+        }
+
+        /**
+         * @return 行号，从1开始
+         */
+        public long getLineNumber() {
+            return lineNumber;
+        }
+
+        /**
+         * @return 该行在文件中的起始位置
+         */
+        public long getByteOffset() {
+            return byteOffset;
+        }
+
+        public RuntimeException getCause() {
+            return cause;
+        }
+
+        @Override
+        public String toString() {
+            return "line " + lineNumber + " (offset " + byteOffset + "): " + cause.getMessage();
+        }
+    }
+
+    /**
+     * 读取结果
+     *
+     * @param <T> t
+     */
+    public static final class Result<T> {
+        private final List<T> values;
+        private final List<LineError> errors;
+
+        private Result(List<T> values, List<LineError> errors) {
+            this.values = Collections.unmodifiableList(values);
+            this.errors = Collections.unmodifiableList(errors);
+        }
+
+        public List<T> getValues() {
+            return values;
+        }
+
+        public List<LineError> getErrors() {
+            return errors;
+        }
+    }
+
+    /**
+     * {@link JsonLinesReader}构造器
+     *
+     * @param <T> t
+     */
+    public static final class Builder<T> {
+        private final Class<T> clazz;
+        private boolean ordered = true;
+        private int chunkSize = 4 << 20;
+        private ForkJoinPool pool = ForkJoinPool.commonPool();
+
+        private Builder(Class<T> clazz) {
+            this.clazz = clazz;
+        }
+
+        /**
+         * @param ordered 是否按行顺序输出，默认true
+         * @return this
+         */
+        public Builder<T> ordered(boolean ordered) {
+            this.ordered = ordered;
+            return this;
+        }
+
+        /**
+         * @param chunkSize 每块的目标字节数，实际延长到下一个换行，默认4MB
+         * @return this
+         */
+        public Builder<T> chunkSize(int chunkSize) {
+            if (chunkSize <= 0) {
+                throw new IllegalArgumentException("chunkSize must be positive: " + chunkSize);
+            }
+            this.chunkSize = chunkSize;
+            return this;
+        }
+
+        /**
+         * @param pool 解析线程池，默认{@link ForkJoinPool#commonPool()}
+         * @return this
+         */
+        public Builder<T> pool(ForkJoinPool pool) {
+            this.pool = pool;
+            return this;
+        }
+
+        public JsonLinesReader<T> build() {
+            return new JsonLinesReader<>(this);
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package io.github.dousxcoder.tools.json;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * 写入JSON Lines(每行一个json)
+ * <br>
+ * 每个对象通过{@link JsonUtilPool#writeTo(OutputStream, Object)}直接以UTF-8写入缓冲区，缓冲区写满时批量写入底层输出流，
+ * 不产生中间字符串
+ * <br>
+ * 非线程安全
+ *
+ * @author dousx
+ */
+public final class JsonLinesWriter implements Closeable, Flushable {
+
+    private static final int DEFAULT_BUFFER_SIZE = 64 << 10;
+
+    /**
+     * json字面量null，与{@link JsonLinesReader}读到的null值对应
+     */
+    private static final byte[] NULL = {'n', 'u', 'l', 'l'};
+
+    private final OutputStream out;
+    private long lineCount;
+
+    /**
+     * @param out 输出流，关闭writer时一并关闭
+     */
+    public JsonLinesWriter(OutputStream out) {
+        this(out, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * @param out        输出流，关闭writer时一并关闭
+     * @param bufferSize 缓冲区大小
+     */
+    public JsonLinesWriter(OutputStream out, int bufferSize) {
+        this.out = new BufferedOutputStream(out, bufferSize);
+    }
+
+    /**
+     * 创建或覆盖文件
+     *
+     * @param file 文件
+     * @return {@link JsonLinesWriter}
+     * @throws IOException 打开文件失败
+     */
+    public static JsonLinesWriter open(Path file) throws IOException {
+        return new JsonLinesWriter(Files.newOutputStream(file));
+    }
+
+    /**
+     * 写入一行
+     *
+     * @param obj obj
+     * @throws IOException 写入失败
+     */
+    public void write(Object obj) throws IOException {
+        if (obj == null) {
+            out.write(NULL);
+        } else {
+            JsonUtilPool.writeTo(out, obj);
+        }
+        out.write('\n');
+        lineCount++;
+    }
+
+    /**
+     * 批量写入
+     *
+     * @param objects objects
+     * @throws IOException 写入失败
+     */
+    public void writeAll(Iterable<?> objects) throws IOException {
+        for (Object obj : objects) {
+            write(obj);
+        }
+    }
+
+    /**
+     * @return 已写入的行数
+     */
+    public long getLineCount() {
+        return lineCount;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+}
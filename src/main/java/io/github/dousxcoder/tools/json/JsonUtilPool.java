@@ -4,19 +4,40 @@ import cn.hutool.core.date.DatePattern;
 import cn.hutool.log.Log;
 import com.alibaba.fastjson2.JSON;
 import com.alibaba.fastjson2.JSONObject;
-import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.JsonMappingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.google.common.reflect.TypeToken;
+import com.fasterxml.jackson.databind.type.TypeFactory;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.reflect.TypeToken;
 import org.apache.commons.lang3.StringUtils;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.lang.reflect.Type;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.text.SimpleDateFormat;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
 
 /**
+ * 依次使用fastjson2、Jackson、Gson处理，前面的库失败时使用后面的库
+ * <br>
+ * 每个类型可用的库由{@link JsonEngineRouter}记住，之后直接使用，见{@link JsonUtilPool#parseRouter()}、{@link JsonUtilPool#writeRouter()}
+ *
  * @author dousx
  */
 public class JsonUtilPool {
@@ -24,44 +45,70 @@ public class JsonUtilPool {
     }
 
     private static final Log log = Log.get(JsonUtilPool.class);
+
     /**
-     * 轮询计数器
+     * 实例数量，默认为CPU核数，可通过系统属性{@code dousx.json.pool-size}指定，向上取整为2的幂
      */
-    private static final AtomicInteger INDEX_ATOMIC = new AtomicInteger(0);
+    private static final int POOL_SIZE = poolSize(Integer.getInteger("dousx.json.pool-size",
+            Runtime.getRuntime().availableProcessors()));
 
+    private static final int POOL_MASK = POOL_SIZE - 1;
 
     /**
-     * PollSize
+     * <a href="https://stackoverflow.com/questions/10380835/is-it-ok-to-use-gson-instance-as-a-static-field-in-a-model-bean-reuse">Gson是线程安全的</a>
+     */
+    private static final Gson[] GSON_INSTANCE_POOL = new Gson[POOL_SIZE];
+    /**
+     * 指定日期格式
      */
-    private static final Integer POLL_SIZE = 10;
+    private static final Map<String, Gson> DATE_FORMAT_GSON_POOL = new ConcurrentHashMap<>();
+    private static final Map<String, ObjectMapper> DATE_FORMAT_OBJECT_MAPPER_INSTANCE_POOL = new ConcurrentHashMap<>();
 
     /**
-     * 重置条件
+     * 按类型记住反序列化、序列化可用的库
      */
-    private static final Integer RESET_CONDITION = Integer.MAX_VALUE / 100;
+    private static final JsonEngineRouter PARSE_ROUTER = new JsonEngineRouter("反序列化");
+    private static final JsonEngineRouter WRITE_ROUTER = new JsonEngineRouter("对象转Json字符串");
 
     /**
-     * <a href="https://stackoverflow.com/questions/10380835/is-it-ok-to-use-gson-instance-as-a-static-field-in-a-model-bean-reuse">Gson是线程安全的</a>
+     * 数组元素类型，每个类只构造一次
      */
-    private static final List<Gson> GSON_INSTANCE_POOL = new LinkedList<>();
+    private static final ClassValue<JavaType> ELEMENT_TYPES = new ClassValue<JavaType>() {
+        @Override
+        protected JavaType computeValue(Class<?> type) {
+            return TypeFactory.defaultInstance().constructType(type);
+        }
+    };
+    private static final ClassValue<Type> LIST_TYPES = new ClassValue<Type>() {
+        @Override
+        protected Type computeValue(Class<?> type) {
+            return TypeToken.getParameterized(List.class, type).getType();
+        }
+    };
+
     /**
-     * 指定日期格式
+     * 按第一个元素估算数组长度时的上限，避免异常的输入一次分配过大的数组
      */
-    private static final Map<String, Gson> DATE_FORMAT_GSON_POOL = new ConcurrentHashMap<>();
-    private static final Map<String, ObjectMapper> DATE_FORMAT_OBJECT_MAPPER_INSTANCE_POOL = new ConcurrentHashMap<>();
+    private static final int MAX_PRESIZE = 1 << 20;
+
+    /**
+     * 每个线程复用的序列化、反序列化缓冲区，超过该大小的缓冲区用完后丢弃，避免长期占用内存
+     */
+    private static final int MAX_POOLED_BUFFER = 1 << 20;
+    private static final ThreadLocal<OutputBuffer> OUTPUT_BUFFERS = ThreadLocal.withInitial(OutputBuffer::new);
+    private static final ThreadLocal<InputBuffer> INPUT_BUFFERS = ThreadLocal.withInitial(InputBuffer::new);
+    private static final byte[] EMPTY_OBJECT = {'{', '}'};
 
 
     /**
      * <a href="https://stackoverflow.com/questions/3907929/should-i-declare-jacksons-objectmapper-as-a-static-field">ObjectMapper是线程安全的</a>
      */
-    private static final List<ObjectMapper> OBJECT_MAPPER_INSTANCE_POOL = new LinkedList<>();
+    private static final ObjectMapper[] OBJECT_MAPPER_INSTANCE_POOL = new ObjectMapper[POOL_SIZE];
 
     static {
-        for (int i = 0; i < POLL_SIZE; i++) {
-            GSON_INSTANCE_POOL.add(gson());
-        }
-        for (int i = 0; i < POLL_SIZE; i++) {
-            OBJECT_MAPPER_INSTANCE_POOL.add(objectMapper());
+        for (int i = 0; i < POOL_SIZE; i++) {
+            GSON_INSTANCE_POOL[i] = gson();
+            OBJECT_MAPPER_INSTANCE_POOL[i] = objectMapper();
         }
         ArrayList<String> dateFormatList = new ArrayList<>();
         // 初始化常见格式
@@ -100,8 +147,8 @@ public class JsonUtilPool {
      *
      * @return {@link Gson}
      */
-    public synchronized static Gson getGsonInstance() {
-        return GSON_INSTANCE_POOL.get(getIndex());
+    public static Gson getGsonInstance() {
+        return GSON_INSTANCE_POOL[getIndex()];
     }
 
 
@@ -110,8 +157,8 @@ public class JsonUtilPool {
      *
      * @return {@link Gson}
      */
-    public synchronized static Gson getDateFormatGsonInstance() {
-        return GSON_INSTANCE_POOL.get(getIndex());
+    public static Gson getDateFormatGsonInstance() {
+        return GSON_INSTANCE_POOL[getIndex()];
     }
 
     /**
@@ -119,22 +166,27 @@ public class JsonUtilPool {
      *
      * @return {@link ObjectMapper}
      */
-    public synchronized static ObjectMapper getObjectMapperInstance() {
-        return OBJECT_MAPPER_INSTANCE_POOL.get(getIndex());
+    public static ObjectMapper getObjectMapperInstance() {
+        return OBJECT_MAPPER_INSTANCE_POOL[getIndex()];
     }
 
     /**
-     * 轮询获取下标
+     * 按线程固定下标，不加锁也不写共享计数器，同一线程总是使用同一个实例
      *
      * @return 下标
      */
-    private synchronized static int getIndex() {
-        int andIncrement = INDEX_ATOMIC.getAndIncrement();
-        if (andIncrement >= RESET_CONDITION) {
-            // 重新计数
-            INDEX_ATOMIC.set(0);
-        }
-        return andIncrement % POLL_SIZE;
+    private static int getIndex() {
+        long id = Thread.currentThread().getId();
+        return (int) (id ^ (id >>> 16)) & POOL_MASK;
+    }
+
+    /**
+     * @param size 期望的实例数量
+     * @return 不小于size的2的幂，范围[1, 64]
+     */
+    private static int poolSize(int size) {
+        int bounded = Math.max(1, Math.min(64, size));
+        return Integer.highestOneBit(bounded * 2 - 1);
     }
 
     /**
@@ -146,14 +198,11 @@ public class JsonUtilPool {
     public static Gson gsonWithDateFormat(String dateFormat) {
         Gson gson = DATE_FORMAT_GSON_POOL.get(dateFormat);
         if (Objects.isNull(gson)) {
-            synchronized (JsonUtilPool.class) {
-                gson = DATE_FORMAT_GSON_POOL.get(dateFormat);
-                if (Objects.isNull(gson)) {
-                    log.debug("new GsonBuilder().setDateFormat({}).create()", dateFormat);
-                    gson = new GsonBuilder().setDateFormat(dateFormat).create();
-                    DATE_FORMAT_GSON_POOL.put(dateFormat, gson);
-                }
-            }
+            // 只在首次创建时锁住对应的桶，之后直接读取
+            gson = DATE_FORMAT_GSON_POOL.computeIfAbsent(dateFormat, format -> {
+                log.debug("new GsonBuilder().setDateFormat({}).create()", format);
+                return new GsonBuilder().setDateFormat(format).create();
+            });
         }
         return gson;
     }
@@ -168,15 +217,12 @@ public class JsonUtilPool {
     public static ObjectMapper objectMapperWithDateFormat(String dateFormat) {
         ObjectMapper objectMapper = DATE_FORMAT_OBJECT_MAPPER_INSTANCE_POOL.get(dateFormat);
         if (Objects.isNull(objectMapper)) {
-            synchronized (JsonUtilPool.class) {
-                objectMapper = DATE_FORMAT_OBJECT_MAPPER_INSTANCE_POOL.get(dateFormat);
-                if (Objects.isNull(objectMapper)) {
-                    log.debug("new GsonBuilder().setDateFormat({}).create()", dateFormat);
-                    objectMapper = new ObjectMapper();
-                    objectMapper.setDateFormat(new SimpleDateFormat(dateFormat));
-                    DATE_FORMAT_OBJECT_MAPPER_INSTANCE_POOL.put(dateFormat, objectMapper);
-                }
-            }
+            objectMapper = DATE_FORMAT_OBJECT_MAPPER_INSTANCE_POOL.computeIfAbsent(dateFormat, format -> {
+                log.debug("new ObjectMapper().setDateFormat({})", format);
+                ObjectMapper mapper = new ObjectMapper();
+                mapper.setDateFormat(new SimpleDateFormat(format));
+                return mapper;
+            });
         }
         return objectMapper;
     }
@@ -191,49 +237,122 @@ public class JsonUtilPool {
         if (StringUtils.isBlank(json)) {
             throw new IllegalArgumentException();
         }
-        T result = null;
-        try {
-            result = JSONObject.parseObject(json, clazz);
-        } catch (Throwable e) {
-            try {
-                log.warn("反序列化失败[com.alibaba.fastjson.JSON] - {}", e.getMessage());
-                result = JsonUtilPool.getObjectMapperInstance().readValue(json, clazz);
-            } catch (Throwable ex) {
-                try {
-                    log.warn("反序列化失败[com.fasterxml.jackson.databind.ObjectMapper] - {}", ex.getMessage());
-                    result = JsonUtilPool.getGsonInstance().fromJson(json, clazz);
-                } catch (Throwable exc) {
-                    log.warn("反序列化失败[com.google.gson.Gson] - {}", exc.getMessage());
-                    throw exc;
-                }
+        return PARSE_ROUTER.call(clazz, engine -> {
+            switch (engine) {
+                case FASTJSON2:
+                    return JSONObject.parseObject(json, clazz);
+                case JACKSON:
+                    return JsonUtilPool.getObjectMapperInstance().readValue(json, clazz);
+                default:
+                    return JsonUtilPool.getGsonInstance().fromJson(json, clazz);
             }
-        }
-        return result;
+        });
     }
 
     /**
      * 解析list类型的json字符串
+     * <br>
+     * 元素直接解析为clazz类型，与{@link JsonUtilPool#parseObject(String, Class)}共用按类型记住的json库({@link JsonEngineRouter})：
+     * fastjson2按元素类型解析；Jackson逐个解析元素，按第一个元素的长度预估list容量；Gson按{@code List<clazz>}解析。
+     * 全部失败时抛出异常
      *
      * @param json  要反序列化对象的字符串
-     * @param clazz Class
+     * @param clazz 元素类型
      * @param <T>   t
-     * @return T类型对象
+     * @return T类型对象的list，json为null字面量时返回null
      */
     public static <T> List<T> parseArray(String json, Class<T> clazz) {
-        List<T> result = null;
+        if (StringUtils.isBlank(json)) {
+            throw new IllegalArgumentException();
+        }
+        return PARSE_ROUTER.call(clazz, engine -> {
+            switch (engine) {
+                case FASTJSON2:
+                    return JSON.parseArray(json, clazz);
+                case JACKSON:
+                    return JsonUtilPool.<T>readArray(JsonUtilPool.getObjectMapperInstance(), json, ELEMENT_TYPES.get(clazz));
+                default:
+                    return JsonUtilPool.getGsonInstance().<List<T>>fromJson(json, LIST_TYPES.get(clazz));
+            }
+        });
+    }
+
+    /**
+     * 从输入流逐个读取json数组的元素，不需要把整个json读入内存
+     * <br>
+     * 提前结束时必须关闭返回的迭代器，关闭时同时关闭输入流
+     *
+     * @param in    输入流
+     * @param clazz 元素类型
+     * @param <T>   t
+     * @return {@link JsonArrayIterator}
+     * @throws UncheckedIOException 输入不是json数组
+     */
+    public static <T> JsonArrayIterator<T> parseArrayIterator(InputStream in, Class<T> clazz) {
         try {
-            result = JsonUtilPool.gson().fromJson(json, new TypeToken<List<T>>() {
-            }.getType());
-        } catch (Throwable ex) {
-            try {
-                log.warn("反序列化失败[com.google.gson.Gson] - {}", ex.getMessage());
-                result = JsonUtilPool.objectMapper().readValue(json, new TypeReference<List<T>>() {
-                });
-            } catch (Throwable exc) {
-                log.warn("反序列化失败[com.fasterxml.jackson.databind.ObjectMapper] - {}", exc.getMessage());
+            return new JsonArrayIterator<>(JsonUtilPool.getObjectMapperInstance(), in, ELEMENT_TYPES.get(clazz));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 从输入流逐个读取json数组的元素，第一个元素在读取完整个输入之前即可处理
+     * <br>
+     * 应在try-with-resources中使用，关闭流时同时关闭输入流；流读完后也会自动关闭输入流
+     *
+     * @param in    输入流
+     * @param clazz 元素类型
+     * @param <T>   t
+     * @return 顺序流
+     * @throws UncheckedIOException 输入不是json数组
+     */
+    public static <T> Stream<T> parseArrayStream(InputStream in, Class<T> clazz) {
+        return parseArrayIterator(in, clazz).stream();
+    }
+
+    /**
+     * 逐个解析数组元素
+     *
+     * @param mapper      ObjectMapper
+     * @param json        json数组
+     * @param elementType 元素类型
+     * @param <T>         t
+     * @return list
+     * @throws IOException 格式错误
+     */
+    private static <T> List<T> readArray(ObjectMapper mapper, String json, JavaType elementType) throws IOException {
+        try (JsonParser parser = mapper.getFactory().createParser(json)) {
+            JsonToken token = parser.nextToken();
+            if (token == JsonToken.VALUE_NULL) {
+                checkEnd(parser);
+                return null;
             }
+            if (token != JsonToken.START_ARRAY) {
+                throw JsonMappingException.from(parser, "expected '[' but was " + token);
+            }
+            List<T> result = null;
+            while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+                if (token == null) {
+                    throw JsonMappingException.from(parser, "unexpected end of array");
+                }
+                T element = mapper.readValue(parser, elementType);
+                if (result == null) {
+                    long consumed = Math.max(1, parser.currentLocation().getCharOffset() - 1);
+                    result = new ArrayList<>((int) Math.min(MAX_PRESIZE, json.length() / consumed + 1));
+                }
+                result.add(element);
+            }
+            checkEnd(parser);
+            return result == null ? new ArrayList<>() : result;
+        }
+    }
+
+    private static void checkEnd(JsonParser parser) throws IOException {
+        JsonToken trailing = parser.nextToken();
+        if (trailing != null) {
+            throw JsonMappingException.from(parser, "unexpected content after array: " + trailing);
         }
-        return result;
     }
 
 
@@ -249,26 +368,186 @@ public class JsonUtilPool {
         if (Objects.isNull(obj)) {
             return "{}";
         }
-        String result = null;
+        return WRITE_ROUTER.call(obj.getClass(), engine -> {
+            switch (engine) {
+                case FASTJSON2:
+                    return JSONObject.toJSONString(obj);
+                case JACKSON:
+                    return JsonUtilPool.getObjectMapperInstance().writeValueAsString(obj);
+                default:
+                    return JsonUtilPool.getGsonInstance().toJson(obj);
+            }
+        });
+    }
+
+
+    /**
+     * 对象转UTF-8编码的json
+     *
+     * @param obj obj
+     * @return json字节
+     */
+    public static byte[] toJsonBytes(Object obj) {
+        if (Objects.isNull(obj)) {
+            return EMPTY_OBJECT.clone();
+        }
+        OutputBuffer buffer = serialize(obj);
         try {
-            result = JSONObject.toJSONString(obj);
-        } catch (Throwable e) {
+            return buffer.toByteArray();
+        } finally {
+            buffer.release();
+        }
+    }
+
+    /**
+     * 对象转json，以UTF-8写入输出流，不关闭输出流
+     * <br>
+     * 先写入当前线程复用的缓冲区，序列化成功后一次写入输出流，降级到其他库时输出流中不会留下不完整的内容
+     *
+     * @param out 输出流
+     * @param obj obj
+     * @throws IOException 写入失败
+     */
+    public static void writeTo(OutputStream out, Object obj) throws IOException {
+        if (Objects.isNull(obj)) {
+            out.write(EMPTY_OBJECT);
+            return;
+        }
+        OutputBuffer buffer = serialize(obj);
+        try {
+            out.write(buffer.array(), 0, buffer.size());
+        } finally {
+            buffer.release();
+        }
+    }
+
+    /**
+     * 对象转json，以UTF-8写入buffer当前位置
+     *
+     * @param target 目标buffer
+     * @param obj    obj
+     * @return 写入的字节数
+     * @throws BufferOverflowException 剩余空间不足，此时target不变
+     */
+    public static int writeTo(ByteBuffer target, Object obj) {
+        if (Objects.isNull(obj)) {
+            target.put(EMPTY_OBJECT);
+            return EMPTY_OBJECT.length;
+        }
+        OutputBuffer buffer = serialize(obj);
+        try {
+            int size = buffer.size();
+            if (size > target.remaining()) {
+                throw new BufferOverflowException();
+            }
+            target.put(buffer.array(), 0, size);
+            return size;
+        } finally {
+            buffer.release();
+        }
+    }
+
+    /**
+     * @param json  UTF-8编码的json
+     * @param clazz Class
+     * @param <T>   t
+     * @return T类型对象
+     */
+    public static <T> T parseObject(byte[] json, Class<T> clazz) {
+        return parseObject(json, 0, json.length, clazz);
+    }
+
+    /**
+     * 读取buffer剩余的全部内容，成功后position移动到limit
+     * <br>
+     * 堆外buffer先复制到当前线程复用的数组中
+     *
+     * @param json  UTF-8编码的json
+     * @param clazz Class
+     * @param <T>   t
+     * @return T类型对象
+     */
+    public static <T> T parseObject(ByteBuffer json, Class<T> clazz) {
+        int length = json.remaining();
+        T result;
+        if (json.hasArray()) {
+            result = parseObject(json.array(), json.arrayOffset() + json.position(), length, clazz);
+        } else {
+            InputBuffer buffer = InputBuffer.acquire(length);
             try {
-                log.warn("对象转Json字符串失败[com.alibaba.fastjson.JSON] - {}", e.getMessage());
-                result = JsonUtilPool.getObjectMapperInstance().writeValueAsString(obj);
-            } catch (Throwable ex) {
-                try {
-                    log.warn("对象转Json字符串失败[com.fasterxml.jackson.databind.ObjectMapper] - {}", ex.getMessage());
-                    result = JsonUtilPool.getGsonInstance().toJson(obj);
-                } catch (Throwable exc) {
-                    log.warn("对象转Json字符串失败[com.google.gson.Gson] - {}", exc.getMessage());
-                    throw exc;
-                }
+                json.duplicate().get(buffer.array, 0, length);
+                result = parseObject(buffer.array, 0, length, clazz);
+            } finally {
+                buffer.release();
             }
         }
+        json.position(json.limit());
         return result;
     }
 
+    private static <T> T parseObject(byte[] json, int offset, int length, Class<T> clazz) {
+        if (length == 0) {
+            throw new IllegalArgumentException();
+        }
+        return PARSE_ROUTER.call(clazz, engine -> {
+            switch (engine) {
+                case FASTJSON2:
+                    return JSON.parseObject(json, offset, length, StandardCharsets.UTF_8, clazz);
+                case JACKSON:
+                    return JsonUtilPool.getObjectMapperInstance().readValue(json, offset, length, clazz);
+                default:
+                    return JsonUtilPool.getGsonInstance().fromJson(
+                            new InputStreamReader(new ByteArrayInputStream(json, offset, length), StandardCharsets.UTF_8), clazz);
+            }
+        });
+    }
+
+    /**
+     * 序列化到当前线程复用的缓冲区，使用完后必须调用{@link OutputBuffer#release()}
+     *
+     * @param obj obj
+     * @return 缓冲区
+     */
+    private static OutputBuffer serialize(Object obj) {
+        OutputBuffer buffer = OutputBuffer.acquire();
+        try {
+            WRITE_ROUTER.call(obj.getClass(), engine -> {
+                // 上一个库失败时可能已写入部分内容
+                buffer.reset();
+                switch (engine) {
+                    case FASTJSON2:
+                        JSON.writeTo(buffer, obj);
+                        break;
+                    case JACKSON:
+                        JsonUtilPool.getObjectMapperInstance().writeValue(buffer, obj);
+                        break;
+                    default:
+                        Writer writer = new OutputStreamWriter(buffer, StandardCharsets.UTF_8);
+                        JsonUtilPool.getGsonInstance().toJson(obj, writer);
+                        writer.flush();
+                }
+                return null;
+            });
+            return buffer;
+        } catch (RuntimeException | Error e) {
+            buffer.release();
+            throw e;
+        }
+    }
+
+    /**
+     * @return 反序列化按类型选择库的情况
+     */
+    public static JsonEngineRouter parseRouter() {
+        return PARSE_ROUTER;
+    }
+
+    /**
+     * @return 序列化按类型选择库的情况
+     */
+    public static JsonEngineRouter writeRouter() {
+        return WRITE_ROUTER;
+    }
 
     public static String toJsonStringWithNormDateTimeMs(Object obj) {
         return toJsonStringWithDateFormat(obj, DatePattern.NORM_DATETIME_MS_PATTERN);
@@ -287,26 +566,74 @@ public class JsonUtilPool {
         if (Objects.isNull(obj)) {
             return "{}";
         }
-        String result = null;
-        try {
-            result = JSON.toJSONString(obj, dateFormat);
-        } catch (Throwable e) {
-            try {
-                log.warn("对象转Json字符串失败[com.alibaba.fastjson.JSON] - {}", e.getMessage());
-                result = JsonUtilPool.objectMapperWithDateFormat(dateFormat).writeValueAsString(obj);
-            } catch (Throwable ex) {
-                try {
-                    log.warn("对象转Json字符串失败[com.fasterxml.jackson.databind.ObjectMapper] - {}", ex.getMessage());
-                    Gson gson = JsonUtilPool.gsonWithDateFormat(dateFormat);
-                    result = gson.toJson(obj);
-                } catch (Throwable exc) {
-                    log.warn("对象转Json字符串失败[com.google.gson.Gson] - {}", exc.getMessage());
-                    throw exc;
-                }
+        return WRITE_ROUTER.call(obj.getClass(), engine -> {
+            switch (engine) {
+                case FASTJSON2:
+                    return JSON.toJSONString(obj, dateFormat);
+                case JACKSON:
+                    return JsonUtilPool.objectMapperWithDateFormat(dateFormat).writeValueAsString(obj);
+                default:
+                    return JsonUtilPool.gsonWithDateFormat(dateFormat).toJson(obj);
+            }
+        });
+    }
+
+    /**
+     * 线程复用的输出缓冲区，序列化过程中再次调用(如自定义序列化器)时使用新的缓冲区
+     */
+    private static final class OutputBuffer extends ByteArrayOutputStream {
+        private boolean inUse;
+
+        private OutputBuffer() {
+            super(4096);
+        }
+
+        private static OutputBuffer acquire() {
+            OutputBuffer buffer = OUTPUT_BUFFERS.get();
+            if (buffer.inUse) {
+                buffer = new OutputBuffer();
+            }
+            buffer.inUse = true;
+            buffer.reset();
+            return buffer;
+        }
+
+        private byte[] array() {
+            return buf;
+        }
+
+        private void release() {
+            inUse = false;
+            if (buf.length > MAX_POOLED_BUFFER && OUTPUT_BUFFERS.get() == this) {
+                OUTPUT_BUFFERS.remove();
             }
         }
-        return result;
     }
 
+    /**
+     * 线程复用的输入数组，用于读取堆外buffer
+     */
+    private static final class InputBuffer {
+        private byte[] array = new byte[4096];
+        private boolean inUse;
+
+        private static InputBuffer acquire(int length) {
+            InputBuffer buffer = INPUT_BUFFERS.get();
+            if (buffer.inUse) {
+                buffer = new InputBuffer();
+            }
+            if (buffer.array.length < length) {
+                buffer.array = new byte[Math.max(length, buffer.array.length * 2)];
+            }
+            buffer.inUse = true;
+            return buffer;
+        }
 
+        private void release() {
+            inUse = false;
+            if (array.length > MAX_POOLED_BUFFER && INPUT_BUFFERS.get() == this) {
+                INPUT_BUFFERS.remove();
+            }
+        }
+    }
 }
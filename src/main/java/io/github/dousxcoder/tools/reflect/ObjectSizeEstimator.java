@@ -0,0 +1,250 @@
+package io.github.dousxcoder.tools.reflect;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 对象占用堆内存估算(64位JVM)
+ * <br>
+ * <ul>
+ *     <li>浅大小：对象头 + 各字段大小，按8字节对齐；每个类的字段布局通过{@link ClassValue}只反射一次</li>
+ *     <li>深大小：从根对象出发遍历所有可达对象(同一对象只计算一次)，不计算{@link Class}和枚举常量</li>
+ *     <li>JDK 9+无法反射访问的JDK内部类(如{@link java.util.HashMap})，{@link Map}/{@link Collection}按元素遍历估算，
+ *     {@link String}按字符内容估算，其余只计算浅大小</li>
+ *     <li>遍历期间被其他线程修改的{@link Map}/{@link Collection}跳过剩余元素</li>
+ *     <li>{@link ObjectSizeEstimator#deepSizeOf(Object, int, long)}限制遍历的对象数和累计字节数，
+ *     避免引用到共享的大对象(如其他缓存、单例)时遍历整个对象图</li>
+ * </ul>
+ * 结果是估算值，不考虑字段重排、对象对齐参数等JVM差异
+ *
+ * @author dousx
+ */
+public final class ObjectSizeEstimator {
+
+    /**
+     * 堆小于32G时默认开启压缩指针
+     */
+    private static final boolean COMPRESSED_OOPS = Runtime.getRuntime().maxMemory() < (32L << 30);
+    private static final int REFERENCE_SIZE = COMPRESSED_OOPS ? 4 : 8;
+    private static final int OBJECT_HEADER = COMPRESSED_OOPS ? 12 : 16;
+    private static final int ARRAY_HEADER = COMPRESSED_OOPS ? 16 : 24;
+    private static final int ALIGNMENT = 8;
+
+    /**
+     * Map中每个键值对的节点开销(HashMap.Node: 头 + hash + key + value + next)
+     */
+    private static final long MAP_ENTRY_OVERHEAD = align(OBJECT_HEADER + 4 + 3L * REFERENCE_SIZE) + REFERENCE_SIZE;
+
+    private static final ClassValue<ClassLayout> LAYOUTS = new ClassValue<ClassLayout>() {
+        @Override
+        protected ClassLayout computeValue(Class<?> type) {
+            return new ClassLayout(type);
+        }
+    };
+
+    private ObjectSizeEstimator() {
+    }
+
+    /**
+     * 浅大小，不包含引用的对象
+     *
+     * @param object 对象
+     * @return 字节数，null返回0
+     */
+    public static long shallowSizeOf(Object object) {
+        if (object == null) {
+            return 0;
+        }
+        Class<?> type = object.getClass();
+        if (type.isArray()) {
+            return arraySize(type.getComponentType(), Array.getLength(object));
+        }
+        return LAYOUTS.get(type).shallowSize;
+    }
+
+    /**
+     * 深大小，包含所有可达对象
+     *
+     * @param object 对象
+     * @return 字节数，null返回0
+     */
+    public static long deepSizeOf(Object object) {
+        return deepSizeOf(object, Integer.MAX_VALUE, Long.MAX_VALUE);
+    }
+
+    /**
+     * 有遍历预算的深大小，超出预算时停止遍历
+     *
+     * @param object     对象
+     * @param maxObjects 最多遍历的对象数
+     * @param maxBytes   累计达到该值时停止
+     * @return 字节数，null返回0；超出预算时为已遍历部分的大小，不超过maxBytes
+     */
+    public static long deepSizeOf(Object object, int maxObjects, long maxBytes) {
+        if (object == null) {
+            return 0;
+        }
+        if (maxObjects <= 0 || maxBytes <= 0) {
+            throw new IllegalArgumentException("maxObjects and maxBytes must be positive");
+        }
+        Set<Object> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        Deque<Object> stack = new ArrayDeque<>();
+        stack.push(object);
+        long size = 0;
+        while (!stack.isEmpty() && size < maxBytes && visited.size() < maxObjects) {
+            Object current = stack.pop();
+            if (!visited.add(current)) {
+                continue;
+            }
+            Class<?> type = current.getClass();
+            if (type.isArray()) {
+                int length = Array.getLength(current);
+                size += arraySize(type.getComponentType(), length);
+                if (!type.getComponentType().isPrimitive()) {
+                    for (int i = 0; i < length && stack.size() < maxObjects; i++) {
+                        push(stack, Array.get(current, i));
+                    }
+                }
+                continue;
+            }
+            if (current instanceof String) {
+                size += stringSize((String) current);
+                continue;
+            }
+            ClassLayout layout = LAYOUTS.get(type);
+            size += layout.shallowSize;
+            if (!layout.accessible && current instanceof Map) {
+                Map<?, ?> map = (Map<?, ?>) current;
+                size += map.size() * MAP_ENTRY_OVERHEAD;
+                try {
+                    for (Map.Entry<?, ?> entry : map.entrySet()) {
+                        if (stack.size() >= maxObjects) {
+                            break;
+                        }
+                        push(stack, entry.getKey());
+                        push(stack, entry.getValue());
+                    }
+                } catch (RuntimeException e) {
+                    // 被其他线程并发修改(ConcurrentModificationException等)，跳过剩余元素
+                }
+            } else if (!layout.accessible && current instanceof Collection) {
+                Collection<?> collection = (Collection<?>) current;
+                size += align(ARRAY_HEADER + (long) collection.size() * REFERENCE_SIZE);
+                try {
+                    for (Object element : collection) {
+                        if (stack.size() >= maxObjects) {
+                            break;
+                        }
+                        push(stack, element);
+                    }
+                } catch (RuntimeException e) {
+                    // 被其他线程并发修改(ConcurrentModificationException等)，跳过剩余元素
+                }
+            } else {
+                for (Field field : layout.references) {
+                    try {
+                        push(stack, field.get(current));
+                    } catch (IllegalAccessException e) {
+                        // 布局中的字段都已setAccessible，不会出现
+                    }
+                }
+            }
+        }
+        return Math.min(size, maxBytes);
+    }
+
+    private static void push(Deque<Object> stack, Object value) {
+        if (value == null || value instanceof Class || value instanceof Enum) {
+            return;
+        }
+        stack.push(value);
+    }
+
+    /**
+     * String对象 + 内部数组，非Latin-1字符按2字节计算(JDK 9+紧凑字符串)
+     */
+    private static long stringSize(String value) {
+        int bytesPerChar = 1;
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) > 0xFF) {
+                bytesPerChar = 2;
+                break;
+            }
+        }
+        return LAYOUTS.get(String.class).shallowSize + align(ARRAY_HEADER + (long) value.length() * bytesPerChar);
+    }
+
+    private static long arraySize(Class<?> componentType, int length) {
+        return align(ARRAY_HEADER + (long) length * sizeOf(componentType));
+    }
+
+    private static int sizeOf(Class<?> type) {
+        if (!type.isPrimitive()) {
+            return REFERENCE_SIZE;
+        }
+        if (type == long.class || type == double.class) {
+            return 8;
+        }
+        if (type == int.class || type == float.class) {
+            return 4;
+        }
+        if (type == short.class || type == char.class) {
+            return 2;
+        }
+        return 1;
+    }
+
+    private static long align(long size) {
+        return (size + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+    }
+
+    /**
+     * 类的浅大小及引用类型字段
+     */
+    private static final class ClassLayout {
+        private final long shallowSize;
+        private final Field[] references;
+
+        /**
+         * 所有引用类型字段都可以反射读取
+         */
+        private final boolean accessible;
+
+        private ClassLayout(Class<?> type) {
+            long size = OBJECT_HEADER;
+            List<Field> fields = new ArrayList<>();
+            boolean allAccessible = true;
+            for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+                for (Field field : c.getDeclaredFields()) {
+                    if (Modifier.isStatic(field.getModifiers())) {
+                        continue;
+                    }
+                    size += sizeOf(field.getType());
+                    if (field.getType().isPrimitive()) {
+                        continue;
+                    }
+                    try {
+                        field.setAccessible(true);
+                        fields.add(field);
+                    } catch (RuntimeException e) {
+                        // JDK 9+模块未开放(InaccessibleObjectException)、安全管理器限制
+                        allAccessible = false;
+                    }
+                }
+            }
+            this.shallowSize = align(size);
+            this.references = fields.toArray(new Field[0]);
+            this.accessible = allAccessible;
+        }
+    }
+}